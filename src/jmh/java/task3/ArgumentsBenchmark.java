@@ -0,0 +1,60 @@
+package task3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Попадания в кэш для методов с одним и с восемью аргументами:
+ * стоимость упаковки аргументов, построения {@link ArgumentsKey} и поиска по нему.
+ * Аргументы перебираются по кругу из {@code keys} значений, все они находятся в кэше
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArgumentsBenchmark {
+    @Param({"1", "1024"})
+    private int keys;
+
+    private Polynomial polynomial;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        polynomial = Utils.cache(new ScaledPolynomial(2));
+        for (int i = 0; i < keys; i++) {
+            polynomial.value(i);
+            polynomial.value(i, 1, 2, 3, 4, 5, 6, 7);
+        }
+        counter = 0;
+    }
+
+    @Benchmark
+    public double oneArgument() {
+        return polynomial.value(next());
+    }
+
+    @Benchmark
+    public double manyArguments() {
+        return polynomial.value(next(), 1, 2, 3, 4, 5, 6, 7);
+    }
+
+    private int next() {
+        int i = counter + 1;
+        counter = i == keys ? 0 : i;
+        return counter;
+    }
+}
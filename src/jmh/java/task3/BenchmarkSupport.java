@@ -0,0 +1,17 @@
+package task3;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Отключает вывод в System.out: методы {@link Fraction} печатают своё имя при каждом вызове,
+     * и без отключения время промаха определялось бы выводом в консоль
+     */
+    static void silenceOutput() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,81 @@
+package task3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Влияние очистки кэша на попадания и промахи.
+ * При {@code cleaner = true} кэш зарегистрирован в {@link MyCacheCleaner} с интервалом 1 мс и нулевым порогом,
+ * то есть очистка запускается при любой доле устаревших записей.
+ * В группе {@code cleaner} поток {@code miss} постоянно добавляет записи для новых состояний, которые устаревают через 300 мс
+ * и удаляются очисткой, пока два потока {@code hit} читают результат для одного состояния
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CleanerBenchmark {
+    @Param({"false", "true"})
+    private boolean cleaner;
+
+    private Fractionable reader;
+    private Fractionable writer;
+    private MyCacheCleaner cacheCleaner;
+
+    @State(Scope.Thread)
+    public static class Counter {
+        private int value;
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceOutput();
+        reader = Utils.cache(new Fraction(2, 10));
+        writer = Utils.cache(new Fraction(2, 10));
+        reader.doubleValue();
+
+        if (cleaner) {
+            cacheCleaner = new MyCacheCleaner(1, 0D);
+            cacheCleaner.add(reader);
+            cacheCleaner.add(writer);
+            cacheCleaner.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (cacheCleaner != null)
+            cacheCleaner.close();
+    }
+
+    @Benchmark
+    @Group("cleaner")
+    @GroupThreads(2)
+    public double hit() {
+        return reader.doubleValue();
+    }
+
+    @Benchmark
+    @Group("cleaner")
+    @GroupThreads(1)
+    public double miss(Counter counter) {
+        writer.setNum(++counter.value);
+        return writer.doubleValue();
+    }
+}
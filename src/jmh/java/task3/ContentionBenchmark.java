@@ -0,0 +1,84 @@
+package task3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обращения к одному прокси {@link Fraction} из нескольких потоков.
+ * {@code hitN} - только попадания в кэш из N потоков.
+ * Группа {@code mixed} - три потока читают {@code doubleValue}, один поток переключает состояние
+ * между двумя значениями {@code num}: чтение конкурирует с блокировкой мутатора и сменой состояния.
+ * Количество потоков для отдельного запуска можно задать параметром {@code -t}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+    private Fractionable fractionable;
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private int counter;
+    }
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceOutput();
+        fractionable = Utils.cache(new Fraction(2, 10));
+        fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double hit1() {
+        return fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public double hit2() {
+        return fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double hit4() {
+        return fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public double hit8() {
+        return fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public double mixedRead() {
+        return fractionable.doubleValue();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite(Writer writer) {
+        fractionable.setNum(++writer.counter & 1);
+    }
+}
@@ -0,0 +1,7 @@
+package task3;
+
+public interface Polynomial {
+    double value(double x);
+    double value(double x, double a, double b, double c, double d, double e, double f, double g);
+    void setScale(double scale);
+}
@@ -0,0 +1,77 @@
+package task3;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Однопоточные сценарии работы прокси {@link Utils#cache(Object)} для {@link Fraction}:
+ * <ul>
+ *     <li>{@code direct} - вызов метода без кэша (базовая линия)</li>
+ *     <li>{@code hit} - результат из кэша</li>
+ *     <li>{@code miss} - каждое обращение в новом состоянии, результат вычисляется и сохраняется в кэш</li>
+ *     <li>{@code mutatorChurn} - чередование мутаторов {@code setNum}/{@code setDenum} с возвратом
+ *     к одному из {@code states} ранее встречавшихся состояний</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProxyCacheBenchmark {
+    @Param({"4", "64"})
+    private int states;
+
+    private Fraction fraction;
+    private Fractionable cached;
+    private Fractionable bounded;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.silenceOutput();
+        fraction = new Fraction(2, 10);
+        cached = Utils.cache(new Fraction(2, 10));
+        // Ограничение размера не даёт кэшу расти бесконечно при постоянных промахах
+        bounded = Utils.cache(new Fraction(2, 10), CacheConfig.builder().maximumSize(10_000).build());
+        counter = 0;
+    }
+
+    @Benchmark
+    public double direct() {
+        return fraction.doubleValue();
+    }
+
+    @Benchmark
+    public double hit() {
+        return cached.doubleValue();
+    }
+
+    @Benchmark
+    public double miss() {
+        bounded.setNum(++counter);
+        return bounded.doubleValue();
+    }
+
+    @Benchmark
+    public double mutatorChurn() {
+        int i = ++counter;
+        if ((i & 1) == 0)
+            cached.setNum(i % states);
+        else
+            cached.setDenum(i % states + 1);
+        return cached.doubleValue();
+    }
+}
@@ -0,0 +1,30 @@
+package task3;
+
+/**
+ * Объект с кэшируемыми методами от одного и от многих аргументов для бенчмарков
+ */
+public class ScaledPolynomial implements Polynomial {
+    private double scale;
+
+    public ScaledPolynomial(double scale) {
+        this.scale = scale;
+    }
+
+    @Cache
+    @Override
+    public double value(double x) {
+        return scale * x;
+    }
+
+    @Cache
+    @Override
+    public double value(double x, double a, double b, double c, double d, double e, double f, double g) {
+        return scale * (((((((a * x + b) * x + c) * x + d) * x + e) * x + f) * x) + g);
+    }
+
+    @Mutator
+    @Override
+    public void setScale(double scale) {
+        this.scale = scale;
+    }
+}
@@ -0,0 +1,86 @@
+package task3;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Решение, окупается ли кэширование метода вида CACHE ({@link CacheConfig#isAdaptive()}).
+ * Часть вызовов метода (1 из {@value #SAMPLE_RATE}) измеряет время поиска результата в кэше и раз в {@code interval} мс
+ * сравнивает за прошедший период время, сэкономленное попаданиями (попадания * среднее время вызова метода),
+ * с затратами на поиск при всех обращениях (обращения * среднее время поиска).
+ * Если кэширование не окупается, метод на {@code interval} мс вызывается напрямую, минуя кэш,
+ * после чего снова кэшируется в течение следующего периода и решение пересматривается.
+ * Если за период не было вызовов метода (все обращения - попадания), кэширование считается выгодным
+ */
+final class AdaptivePolicy {
+    static final int SAMPLE_RATE = 64;
+    // Минимальное количество обращений к кэшу за период для принятия решения
+    private static final long MIN_REQUESTS = 100;
+
+    private final MethodStats stats;
+    private final long interval;
+    private volatile boolean bypassed;
+    // Время следующего пересмотра решения
+    private volatile long deadline;
+
+    // Значения счётчиков на начало периода
+    private long startHits;
+    private long startMisses;
+    private long startLoads;
+    private long startLoadTime;
+    private long startLookups;
+    private long startLookupTime;
+
+    AdaptivePolicy(MethodStats stats, long interval, long now) {
+        this.stats = stats;
+        this.interval = interval;
+        this.deadline = now + interval;
+    }
+
+    /**
+     * @return {@code true} если вызов выбран для измерения
+     */
+    static boolean sample() {
+        return ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0;
+    }
+
+    boolean isBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * Пересматривает решение, если период закончился
+     */
+    void evaluate(long now) {
+        if (now < deadline)
+            return;
+
+        synchronized (this) {
+            if (now < deadline)
+                return;
+
+            if (bypassed) {
+                bypassed = false;
+            } else {
+                long hits = stats.hits.sum() - startHits;
+                long requests = hits + stats.misses.sum() - startMisses;
+                long loads = stats.loads.sum() - startLoads;
+                long lookups = stats.lookups.sum() - startLookups;
+                if (requests >= MIN_REQUESTS && loads > 0 && lookups > 0) {
+                    double loadTime = (double) (stats.totalLoadTime.sum() - startLoadTime) / loads;
+                    double lookupTime = (double) (stats.totalLookupTime.sum() - startLookupTime) / lookups;
+                    bypassed = hits * loadTime <= requests * lookupTime;
+                    if (bypassed)
+                        stats.bypassSwitches.increment();
+                }
+            }
+
+            startHits = stats.hits.sum();
+            startMisses = stats.misses.sum();
+            startLoads = stats.loads.sum();
+            startLoadTime = stats.totalLoadTime.sum();
+            startLookups = stats.lookups.sum();
+            startLookupTime = stats.totalLookupTime.sum();
+            deadline = now + interval;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package task3;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый ключ, соответствующий списку аргументов вызова метода.
+ * Хэш-код вычисляется один раз при создании ключа, поэтому поиск в кэше по ключу выполняется за O(1)
+ * без повторного обхода аргументов и без копирования массива.
+ * Сравнение аргументов выполняется так же, как в {@link Arrays#equals(Object[], Object[])}
+ */
+public final class ArgumentsKey {
+    // Ключ для методов без аргументов (Proxy передаёт в этом случае null)
+    public static final ArgumentsKey EMPTY = new ArgumentsKey(new Object[0]);
+
+    private final Object[] args;
+    private final int hash;
+
+    private ArgumentsKey(Object[] args) {
+        this.args = args;
+        this.hash = Arrays.hashCode(args);
+    }
+
+    /**
+     * Создаёт ключ по массиву аргументов.
+     * Массив не копируется: вызывающая сторона не должна изменять его после создания ключа
+     * (Proxy создаёт новый массив аргументов на каждый вызов)
+     */
+    public static ArgumentsKey of(Object[] args) {
+        return args == null || args.length == 0 ? EMPTY : new ArgumentsKey(args);
+    }
+
+    /**
+     * @return копия массива аргументов
+     */
+    public Object[] toArray() {
+        return Arrays.copyOf(args, args.length);
+    }
+
+    public int size() {
+        return args.length;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (object == null || getClass() != object.getClass()) return false;
+
+        ArgumentsKey key = (ArgumentsKey) object;
+        return hash == key.hash && Arrays.equals(args, key.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(args);
+    }
+}
@@ -0,0 +1,55 @@
+package task3;
+
+import lombok.Getter;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Обработчик вызовов асинхронного интерфейса, созданного через {@link Utils#cacheAsync}.
+ * Каждому методу асинхронного интерфейса соответствует одноименный метод с теми же параметрами
+ * в интерфейсах кэшируемого объекта, а результат метода возвращается в CompletableFuture.
+ * Вызовы передаются в {@link MyCache}: результаты из кэша возвращаются сразу,
+ * а при промахе метод вызывается в пуле {@code executor}
+ */
+final class AsyncFacade implements InvocationHandler {
+    @Getter
+    private final MyCache cache;
+    private final Executor executor;
+    // Методы асинхронного интерфейса и соответствующие им методы интерфейсов объекта
+    private final Map<Method, Method> methods = new HashMap<>();
+
+    AsyncFacade(MyCache cache, Class<?> targetClass, Class<?> asyncInterface, Executor executor) {
+        this.cache = cache;
+        this.executor = executor;
+
+        for (Method method : asyncInterface.getMethods()) {
+            if (!method.getReturnType().isAssignableFrom(CompletableFuture.class))
+                throw new IllegalArgumentException("Method " + method + " must return CompletableFuture");
+            methods.put(method, getSyncMethod(targetClass, method));
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        // equals, hashCode и toString выполняются синхронно
+        if (method.getDeclaringClass() == Object.class)
+            return cache.invoke(proxy, method, args);
+
+        return cache.invokeAsync(methods.get(method), args, executor);
+    }
+
+    private static Method getSyncMethod(Class<?> targetClass, Method method) {
+        for (Method syncMethod : MethodDescriptor.forClass(targetClass).keySet()) {
+            if (syncMethod.getName().equals(method.getName())
+                    && Arrays.equals(syncMethod.getParameterTypes(), method.getParameterTypes()))
+                return syncMethod;
+        }
+        throw new IllegalArgumentException("Method " + method + " is not declared by interfaces of " + targetClass);
+    }
+}
@@ -9,4 +9,29 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface Cache {
     int lifetime() default 1000;
+
+    /**
+     * Имена полей, от которых зависит результат метода.
+     * Результаты кэшируются по состоянию только этих полей, поэтому изменение остальных полей
+     * не приводит к повторному вызову метода. Если не задано, метод зависит от всех полей объекта
+     */
+    String[] dependsOn() default {};
+
+    /**
+     * Окно обновления заранее (мс) до окончания времени жизни результата, 0 - без обновления.
+     * Если задано, время жизни результата отсчитывается от вызова метода и не продлевается при обращениях.
+     * Обращение к результату, до устаревания которого осталось меньше {@code refreshAhead}, возвращает
+     * текущий результат и запускает один фоновый вызов метода для текущего состояния,
+     * новый результат заменяет прежний в кэше
+     */
+    long refreshAhead() default 0;
+
+    /**
+     * Время жизни (мс) исключения, выброшенного методом, 0 - исключения не кэшируются.
+     * Если задано, исключение метода сохраняется в кэше для состояния и аргументов вызова, как результат,
+     * и до истечения этого времени повторные вызовы выбрасывают то же исключение без вызова метода.
+     * Время жизни исключения не продлевается при обращениях. Ошибки (Error) и исключения асинхронных методов
+     * не кэшируются
+     */
+    long failureLifetime() default 0;
 }
@@ -0,0 +1,102 @@
+package task3;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.io.ObjectInputFilter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Настройки кэша {@link MyCache}.
+ * {@code maximumSize} задаёт максимальное количество записей в кэше (0 = без ограничения)
+ * {@code maximumWeight} задаёт максимальный суммарный вес записей, вычисляемый {@code weigher} (0 = без ограничения)
+ * При превышении ограничений записи вытесняются по алгоритму "второго шанса" (CLOCK), приближающему LRU:
+ * запись, к которой обращались после последней проверки, получает второй шанс и остаётся в кэше
+ * {@code ticker} задаёт источник времени для вычисления времени жизни записей, например, {@link Ticker#coarse()}
+ * {@code jmxEnabled} включает регистрацию кэша в MBeanServer при создании прокси через {@link Utils}
+ * {@code executor} задаёт пул, в котором асинхронный фасад {@link Utils#cacheAsync} вызывает методы при промахе
+ * и выполняется обновление результатов заранее ({@link Cache#refreshAhead()}).
+ * По умолчанию используются виртуальные потоки, если JDK предоставляет их без дополнительных флагов,
+ * иначе - {@link ForkJoinPool#commonPool()}
+ * {@code offHeapCapacity} задаёт объём внешней памяти (байт) для хранения результатов вне кучи (0 = не используется).
+ * Вне кучи хранятся сериализуемые результаты, сериализованный размер которых не меньше {@code offHeapThreshold} байт,
+ * при обращении к ним возвращается десериализованная копия.
+ * После {@code offHeapPromotion} обращений результат переносится обратно в кучу (0 = не переносится)
+ * {@code scope} задаёт область {@link CacheScope}, хранилище результатов которой используют все прокси,
+ * созданные с ней для объектов одного класса (null = у каждого прокси собственное хранилище)
+ * {@code remoteTier} задаёт удалённый уровень кэша {@link RemoteTier}, общий для нескольких узлов (null = не используется)
+ * {@code adaptive} включает адаптивное кэширование: метод, кэширование которого не окупается
+ * (редкие попадания или вызов дешевле поиска в кэше), вызывается напрямую, минуя кэш.
+ * Решение пересматривается каждые {@code adaptiveInterval} мс, см. {@link AdaptivePolicy}
+ * {@code deserializationFilter} задаёт фильтр классов при чтении снимков и данных удалённого уровня
+ * (null = разрешены классы модуля java.base и пакета класса кэшируемого объекта)
+ */
+@Getter
+@Builder
+public final class CacheConfig {
+    // Объявлен до DEFAULT, так как используется при его создании
+    private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    public static final CacheConfig DEFAULT = CacheConfig.builder().build();
+
+    @Builder.Default
+    private final long maximumSize = 0;
+
+    @Builder.Default
+    private final long maximumWeight = 0;
+
+    // Если не задан, вес каждой записи равен 1
+    private final Weigher weigher;
+
+    @Builder.Default
+    private final Ticker ticker = Ticker.SYSTEM;
+
+    private final boolean jmxEnabled;
+
+    @Builder.Default
+    private final Executor executor = DEFAULT_EXECUTOR;
+
+    private final long offHeapCapacity;
+
+    @Builder.Default
+    private final int offHeapThreshold = 1024;
+
+    @Builder.Default
+    private final int offHeapPromotion = 8;
+
+    private final CacheScope scope;
+
+    private final RemoteTier remoteTier;
+
+    private final boolean adaptive;
+
+    @Builder.Default
+    private final long adaptiveInterval = 1000;
+
+    private final ObjectInputFilter deserializationFilter;
+
+    public boolean isBounded() {
+        return maximumSize > 0 || maximumWeight > 0;
+    }
+
+    /**
+     * Пул виртуальных потоков ищется через MethodHandle: в JDK 19 это preview API, и прямой вызов
+     * не компилируется без --enable-preview, а в более ранних JDK метода нет
+     */
+    private static Executor createDefaultExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invokeExact();
+        } catch (Throwable e) {
+            // Метода нет или preview API не включён
+            return ForkJoinPool.commonPool();
+        }
+    }
+}
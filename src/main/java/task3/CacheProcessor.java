@@ -0,0 +1,303 @@
+package task3;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Generated;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Обработчик аннотаций, генерирующий при компиляции обёртки кэшируемых классов.
+ * Для каждого класса с методами, отмеченными {@link Cache} или {@link Mutator}, создаётся класс
+ * {@code <Класс>_Cached} в том же пакете, который реализует интерфейсы класса и передаёт вызовы в {@link MyCache}
+ * без динамического прокси: описания методов ({@link MethodDescriptor}) получаются один раз при загрузке обёртки,
+ * поэтому при вызове нет ни диспетчеризации через {@link java.lang.reflect.Proxy}, ни поиска описания по Method.
+ * {@link Utils#cache} использует обёртку, если она есть, иначе создаёт динамический прокси.
+ * <p>
+ * Обёртка заменяет только точку входа. Остальная работа остаётся общей с динамическим прокси:
+ * аргументы передаются в {@link MyCache#invoke(MethodDescriptor, Object[])} массивом с упаковкой примитивов,
+ * состояние читается через {@link StateSchema}, результаты хранятся в общем хранилище MyCache.
+ * Прямое чтение полей и типизированное хранилище для каждого метода не генерируются: они дублировали бы
+ * в сгенерированном коде вытеснение, время жизни, статистику, снимки и удалённый уровень MyCache.
+ * <p>
+ * Как и динамический прокси, обёртка реализует только интерфейсы класса. Обёртки не создаются для абстрактных,
+ * параметризованных, закрытых, локальных и нестатических вложенных классов, а также для классов без интерфейсов.
+ * Обработчик зарегистрирован в {@code META-INF/services} и подключается компилятором автоматически,
+ * если находится в classpath. Основной код проекта обрабатывается после отдельной компиляции
+ * самого обработчика (см. pom.xml)
+ */
+@SupportedAnnotationTypes({"task3.Cache", "task3.Mutator"})
+public class CacheProcessor extends AbstractProcessor {
+    static final String SUFFIX = "_Cached";
+
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> classes = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWithAny(annotations.toArray(new TypeElement[0]))) {
+            if (element.getKind() == ElementKind.METHOD
+                    && element.getEnclosingElement().getKind() == ElementKind.CLASS)
+                classes.add((TypeElement) element.getEnclosingElement());
+        }
+
+        for (TypeElement type : classes) {
+            if (isWrappable(type) && generated.add(type.getQualifiedName().toString()))
+                generate(type);
+        }
+        return false;
+    }
+
+    /**
+     * Имя обёртки класса по его двоичному имени без пакета: имена вложенных классов соединяются через '_'.
+     * {@link Utils} ищет обёртку по тому же правилу
+     */
+    private static String wrapperName(String binaryNameWithoutPackage) {
+        return binaryNameWithoutPackage.replace('$', '_') + SUFFIX;
+    }
+
+    private boolean isWrappable(TypeElement type) {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)
+                || !type.getTypeParameters().isEmpty() || type.getInterfaces().isEmpty())
+            return false;
+
+        for (Element element = type; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+            TypeElement enclosing = (TypeElement) element;
+            if (enclosing.getNestingKind() == NestingKind.LOCAL || enclosing.getNestingKind() == NestingKind.ANONYMOUS)
+                return false;
+            if (enclosing.getNestingKind() == NestingKind.MEMBER && !enclosing.getModifiers().contains(Modifier.STATIC))
+                return false;
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String simpleName = wrapperName(packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1));
+        String targetName = type.getQualifiedName().toString();
+
+        Map<String, WrappedMethod> methods = collectMethods(type);
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+
+        source.append("@").append(Generated.class.getName()).append("(\"").append(CacheProcessor.class.getName()).append("\")\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(simpleName).append(" implements ")
+                .append(type.getInterfaces().stream().map(TypeMirror::toString).collect(Collectors.joining(", ")))
+                .append(", task3.CacheWrapper {\n");
+
+        List<WrappedMethod> wrapped = new ArrayList<>(methods.values());
+        for (int i = 0; i < wrapped.size(); i++) {
+            source.append("    private static final task3.MethodDescriptor M").append(i).append(";\n");
+        }
+        source.append("\n    static {\n")
+                .append("        java.util.Map<java.lang.reflect.Method, task3.MethodDescriptor> descriptors =\n")
+                .append("                task3.MethodDescriptor.forClass(").append(targetName).append(".class);\n")
+                .append("        try {\n");
+        for (int i = 0; i < wrapped.size(); i++) {
+            WrappedMethod method = wrapped.get(i);
+            source.append("            M").append(i).append(" = descriptors.get(").append(method.declaringType)
+                    .append(".class.getMethod(\"").append(method.name).append("\"");
+            for (String parameterType : method.erasedParameterTypes) {
+                source.append(", ").append(parameterType).append(".class");
+            }
+            source.append("));\n");
+        }
+        source.append("        } catch (NoSuchMethodException e) {\n")
+                .append("            throw new ExceptionInInitializerError(e);\n")
+                .append("        }\n")
+                .append("    }\n\n");
+
+        source.append("    private final task3.MyCache cache;\n\n")
+                .append("    public ").append(simpleName).append("(task3.MyCache cache) {\n")
+                .append("        this.cache = cache;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public task3.MyCache getCache() {\n")
+                .append("        return cache;\n")
+                .append("    }\n");
+
+        for (int i = 0; i < wrapped.size(); i++) {
+            source.append("\n");
+            appendMethod(source, wrapped.get(i), "M" + i);
+        }
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot generate " + qualifiedName + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Собирает методы интерфейсов класса и методы equals, hashCode, toString - те же методы, вызовы которых
+     * динамический прокси передаёт в {@link MyCache}. Для одинаковых сигнатур используется первый интерфейс
+     */
+    private Map<String, WrappedMethod> collectMethods(TypeElement type) {
+        Map<String, WrappedMethod> methods = new LinkedHashMap<>();
+        for (TypeMirror anInterface : type.getInterfaces()) {
+            TypeElement interfaceElement = (TypeElement) processingEnv.getTypeUtils().asElement(anInterface);
+            for (Element member : processingEnv.getElementUtils().getAllMembers(interfaceElement)) {
+                if (member.getKind() != ElementKind.METHOD
+                        || member.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                        || member.getModifiers().contains(Modifier.STATIC)
+                        || member.getModifiers().contains(Modifier.PRIVATE))
+                    continue;
+
+                ExecutableElement method = (ExecutableElement) member;
+                ExecutableType resolved = (ExecutableType) processingEnv.getTypeUtils()
+                        .asMemberOf((DeclaredType) anInterface, method);
+                WrappedMethod wrapped = new WrappedMethod(method, resolved);
+                methods.putIfAbsent(wrapped.signature(), wrapped);
+            }
+        }
+
+        TypeElement object = processingEnv.getElementUtils().getTypeElement(Object.class.getName());
+        for (Element member : object.getEnclosedElements()) {
+            String name = member.getSimpleName().toString();
+            if (member.getKind() == ElementKind.METHOD
+                    && (name.equals("equals") || name.equals("hashCode") || name.equals("toString"))) {
+                ExecutableElement method = (ExecutableElement) member;
+                WrappedMethod wrapped = new WrappedMethod(method, (ExecutableType) method.asType());
+                methods.putIfAbsent(wrapped.signature(), wrapped);
+            }
+        }
+        return methods;
+    }
+
+    private void appendMethod(StringBuilder source, WrappedMethod method, String descriptor) {
+        ExecutableType type = method.type;
+        List<? extends TypeMirror> parameters = type.getParameterTypes();
+
+        source.append("    @Override\n    public ");
+        if (!method.element.getTypeParameters().isEmpty()) {
+            source.append("<");
+            for (int i = 0; i < method.element.getTypeParameters().size(); i++) {
+                TypeParameterElement parameter = method.element.getTypeParameters().get(i);
+                if (i > 0)
+                    source.append(", ");
+                source.append(parameter.getSimpleName());
+                String bounds = parameter.getBounds().stream()
+                        .map(TypeMirror::toString)
+                        .filter(bound -> !bound.equals(Object.class.getName()))
+                        .collect(Collectors.joining(" & "));
+                if (!bounds.isEmpty())
+                    source.append(" extends ").append(bounds);
+            }
+            source.append("> ");
+        }
+        source.append(type.getReturnType()).append(" ").append(method.name).append("(");
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0)
+                source.append(", ");
+            TypeMirror parameter = parameters.get(i);
+            if (method.element.isVarArgs() && i == parameters.size() - 1)
+                source.append(((ArrayType) parameter).getComponentType()).append("...");
+            else
+                source.append(parameter);
+            source.append(" arg").append(i);
+        }
+        source.append(")");
+        if (!type.getThrownTypes().isEmpty()) {
+            source.append(" throws ").append(type.getThrownTypes().stream()
+                    .map(TypeMirror::toString)
+                    .collect(Collectors.joining(", ")));
+        }
+        source.append(" {\n        try {\n            ");
+
+        String call = "cache.invoke(" + descriptor + ", " + arguments(parameters.size()) + ")";
+        TypeMirror returnType = type.getReturnType();
+        if (returnType.getKind() == TypeKind.VOID) {
+            source.append(call).append(";\n");
+        } else if (returnType.getKind().isPrimitive()) {
+            String boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) returnType).getQualifiedName().toString();
+            source.append("return (").append(boxed).append(") ").append(call).append(";\n");
+        } else {
+            source.append("return (").append(returnType).append(") ").append(call).append(";\n");
+        }
+
+        source.append("        } catch (Throwable e) {\n")
+                .append("            throw task3.CacheWrapper.propagate(e");
+        for (TypeMirror thrown : type.getThrownTypes()) {
+            source.append(", ").append(processingEnv.getTypeUtils().erasure(thrown)).append(".class");
+        }
+        source.append(");\n        }\n    }\n");
+    }
+
+    /**
+     * Массив аргументов, как его передаёт динамический прокси: {@code null} для метода без параметров
+     */
+    private static String arguments(int count) {
+        if (count == 0)
+            return "null";
+
+        StringBuilder arguments = new StringBuilder("new Object[]{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                arguments.append(", ");
+            arguments.append("arg").append(i);
+        }
+        return arguments.append("}").toString();
+    }
+
+    private final class WrappedMethod {
+        private final ExecutableElement element;
+        // Тип метода с учётом параметров типов интерфейса, указанных классом
+        private final ExecutableType type;
+        private final String name;
+        // Интерфейс, в котором объявлен метод, и типы параметров после стирания - для поиска java.lang.reflect.Method
+        private final String declaringType;
+        private final List<String> erasedParameterTypes = new ArrayList<>();
+
+        private WrappedMethod(ExecutableElement element, ExecutableType type) {
+            this.element = element;
+            this.type = type;
+            this.name = element.getSimpleName().toString();
+            this.declaringType = ((TypeElement) element.getEnclosingElement()).getQualifiedName().toString();
+            element.getParameters().forEach(parameter -> erasedParameterTypes.add(
+                    processingEnv.getTypeUtils().erasure(parameter.asType()).toString()));
+        }
+
+        private String signature() {
+            return name + erasedParameterTypes;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package task3;
+
+import java.lang.ref.Cleaner;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Область кэша, общая для нескольких прокси ({@link CacheConfig#getScope()}).
+ * Прокси одной области для объектов одного класса используют общее хранилище результатов:
+ * результат, вычисленный для одного объекта, возвращается из кэша любому другому объекту в том же состоянии,
+ * а одновременные вызовы для равных состояний выполняются один раз.
+ * Состояния в хранилище канонические, поэтому равные снимки состояний разных объектов хранятся в одном экземпляре.
+ * <p>
+ * Ограничения размера ({@code maximumSize}, {@code maximumWeight}, {@code weigher}), источник времени
+ * ({@code ticker}) и параметры внешней памяти относятся к общему хранилищу и задаются настройками первого прокси
+ * класса. Создание в той же области прокси для объекта того же класса с другими значениями этих настроек
+ * завершается {@link IllegalArgumentException}.
+ * Вызовы мутаторов, статистика и регистрация в JMX у каждого прокси свои.
+ * <p>
+ * Хранилище класса удаляется из области вместе с результатами, когда все созданные с ним прокси
+ * стали недоступны и собраны сборщиком мусора: устаревшие записи очищаются через прокси
+ * ({@link MyCache#clearCache()}), и без них хранилище только занимало бы память
+ */
+public final class CacheScope {
+    // Общий для всех областей поток, удаляющий хранилища после сборки их прокси
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final Map<Class<?>, CacheStorage> storages = new ConcurrentHashMap<>();
+
+    /**
+     * Возвращает хранилище класса {@code targetClass}, которое используется, пока не собран {@code cache}
+     */
+    CacheStorage storageFor(Class<?> targetClass, CacheConfig config, MyCache cache) {
+        CacheStorage storage = storages.compute(targetClass, (c, current) -> {
+            if (current == null)
+                current = new CacheStorage(config);
+            else if (!current.isConfiguredAs(config))
+                throw new IllegalArgumentException("Cache scope storage of " + targetClass.getName()
+                        + " was created with other limits, ticker or off-heap settings");
+            current.users++;
+            return current;
+        });
+        CLEANER.register(cache, () -> release(targetClass, storage));
+        return storage;
+    }
+
+    /**
+     * @return количество хранилищ в области
+     */
+    int size() {
+        return storages.size();
+    }
+
+    private void release(Class<?> targetClass, CacheStorage storage) {
+        storages.computeIfPresent(targetClass, (c, current) ->
+                current != storage || --current.users > 0 ? current : null);
+    }
+}
@@ -0,0 +1,292 @@
+package task3;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Снимок кэша в файле: состояния, аргументы, результаты и оставшееся время жизни записей.
+ * <p>
+ * Формат файла: заголовок (сигнатура, версия, имя класса объекта), таблица состояний
+ * (имена полей проекции и сериализованные значения), затем записи: номер состояния, сигнатура метода,
+ * сериализованные аргументы, оставшееся время жизни (мс) и сериализованный результат.
+ * Каждое состояние записывается один раз, сколько бы результатов для него ни было.
+ * <p>
+ * Файл читается через отображение в память: состояния и аргументы декодируются сразу, так как нужны
+ * для ключей кэша, а результаты остаются в отображённом файле до первого обращения ({@link MappedResult}).
+ * Записи с несериализуемыми состояниями, аргументами или результатами, незавершённые и асинхронные результаты,
+ * а также исключения методов в снимок не попадают.
+ * <p>
+ * Данные снимков и удалённого уровня десериализуются с фильтром {@link ObjectInputFilter}
+ * ({@link CacheConfig#getDeserializationFilter()}), вместе с которым действует фильтр JVM, если он задан.
+ * Значение отклонённого фильтром класса считается недоступным
+ */
+final class CacheSnapshot {
+    private static final int MAGIC = 0x4D43534E;
+    private static final int VERSION = 1;
+    // Ограничения размера десериализуемого графа объектов
+    private static final ObjectInputFilter LIMITS =
+            ObjectInputFilter.Config.createFilter("maxdepth=64;maxrefs=1000000;maxarray=10000000");
+
+    private CacheSnapshot() {
+    }
+
+    /**
+     * Запись, прочитанная из снимка. Результат не декодирован
+     */
+    record Entry(State state, MethodDescriptor method, ArgumentsKey key, long remaining, ByteBuffer result) {
+    }
+
+    /**
+     * Записывает снимок во временный файл и затем заменяет им {@code file}
+     *
+     * @return количество записанных результатов
+     */
+    static int write(Path file, Class<?> targetClass, Collection<CachedResult> entries, long now) throws IOException {
+        Map<State, Integer> stateIndexes = new HashMap<>();
+        List<byte[]> stateBlobs = new ArrayList<>();
+        List<State> states = new ArrayList<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(body);
+        int count = 0;
+
+        for (CachedResult cachedResult : entries) {
+            long remaining = cachedResult.getExpired() - now;
+            if (remaining <= 0 || cachedResult.isRemoved() || cachedResult.isFailed()
+                    || cachedResult.getMethod().isAsync())
+                continue;
+
+            // Результаты вне кучи и из отображённого файла копируются без десериализации
+            byte[] resultBlob = cachedResult.serializeResult();
+            byte[] argsBlob = serialize(cachedResult.getKey().toArray());
+            if (resultBlob == null || argsBlob == null)
+                continue;
+
+            State state = cachedResult.getState();
+            Integer stateIndex = stateIndexes.get(state);
+            if (stateIndex == null) {
+                byte[] stateBlob = serialize(state.values());
+                if (stateBlob == null)
+                    continue;
+                stateIndex = states.size();
+                stateIndexes.put(state, stateIndex);
+                states.add(state);
+                stateBlobs.add(stateBlob);
+            }
+
+            output.writeInt(stateIndex);
+            writeString(output, signature(cachedResult.getMethod()));
+            writeBlob(output, argsBlob);
+            output.writeLong(remaining);
+            writeBlob(output, resultBlob);
+            count++;
+        }
+        output.flush();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, targetClass.getName());
+
+            out.writeInt(states.size());
+            for (int i = 0; i < states.size(); i++) {
+                State state = states.get(i);
+                int[] fields = state.fields();
+                out.writeInt(fields.length);
+                for (int field : fields) {
+                    writeString(out, state.schema().getField(field).getName());
+                }
+                writeBlob(out, stateBlobs.get(i));
+            }
+
+            out.writeInt(count);
+            body.writeTo(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Читает снимок через отображение файла в память.
+     * Записи для методов или полей, которых нет в классе, пропускаются
+     *
+     * @throws IllegalArgumentException если снимок создан для другого класса
+     */
+    static List<Entry> read(Path file, Class<?> targetClass, Collection<MethodDescriptor> methods,
+                            ObjectInputFilter filter) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            throw new IOException("Unsupported snapshot format: " + file);
+        String className = readString(buffer);
+        if (!className.equals(targetClass.getName()))
+            throw new IllegalArgumentException("Snapshot " + file + " was created for " + className);
+
+        StateSchema schema = StateSchema.forClass(targetClass);
+        State[] states = new State[buffer.getInt()];
+        for (int i = 0; i < states.length; i++) {
+            String[] names = new String[buffer.getInt()];
+            for (int j = 0; j < names.length; j++) {
+                names[j] = readString(buffer);
+            }
+            ByteBuffer values = readBlob(buffer);
+            states[i] = createState(schema, names, values, filter);
+        }
+
+        Map<String, MethodDescriptor> signatures = methods.stream()
+                .filter(method -> method.getKind() == MethodDescriptor.Kind.CACHE)
+                .collect(Collectors.toMap(CacheSnapshot::signature, method -> method));
+
+        int count = buffer.getInt();
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            State state = states[buffer.getInt()];
+            MethodDescriptor method = signatures.get(readString(buffer));
+            ByteBuffer args = readBlob(buffer);
+            long remaining = buffer.getLong();
+            ByteBuffer result = readBlob(buffer);
+
+            if (state == null || method == null || !Arrays.equals(state.fields(), method.getDependencies()))
+                continue;
+            try {
+                entries.add(new Entry(state, method, ArgumentsKey.of((Object[]) deserialize(args, filter)), remaining, result));
+            } catch (IllegalStateException e) {
+                // Класс аргумента недоступен или изменился
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Фильтр по умолчанию: разрешены классы модуля java.base и пакета класса {@code targetClass}
+     * (и массивы из них) в пределах ограничений размера, остальные классы отклоняются
+     */
+    static ObjectInputFilter defaultFilter(Class<?> targetClass) {
+        Module base = Object.class.getModule();
+        String packageName = targetClass.getPackageName();
+        return ObjectInputFilter.merge(LIMITS, info -> {
+            Class<?> type = info.serialClass();
+            if (type == null)
+                return ObjectInputFilter.Status.UNDECIDED;
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            return type.isPrimitive() || type.getModule() == base || type.getPackageName().equals(packageName)
+                    ? ObjectInputFilter.Status.ALLOWED
+                    : ObjectInputFilter.Status.REJECTED;
+        });
+    }
+
+    /**
+     * @throws IllegalStateException если объект не удаётся прочитать или его класс отклонён фильтром
+     */
+    static Object deserialize(ByteBuffer blob, ObjectInputFilter filter) {
+        byte[] data = new byte[blob.remaining()];
+        blob.duplicate().get(data);
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            ObjectInputFilter global = ObjectInputFilter.Config.getSerialFilter();
+            if (filter != null)
+                input.setObjectInputFilter(global == null ? filter : ObjectInputFilter.merge(filter, global));
+            return input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return сериализованный объект или {@code null}, если объект не сериализуем
+     */
+    static byte[] serialize(Object object) {
+        if (object != null && !(object instanceof Serializable))
+            return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(object);
+        } catch (IOException e) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Восстанавливает состояние с полями {@code names}, значения которых записаны в порядке индексов полей
+     *
+     * @return состояние или {@code null}, если какого-либо поля нет в классе, порядок или тип полей изменился
+     * или значения не удаётся прочитать
+     */
+    private static State createState(StateSchema schema, String[] names, ByteBuffer blob, ObjectInputFilter filter) {
+        try {
+            int[] fields = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                fields[i] = schema.indexesOf(names[i])[0];
+                if (i > 0 && fields[i] <= fields[i - 1])
+                    return null;
+            }
+            if (fields.length == schema.size())
+                fields = schema.indexesOf();
+
+            Object[] values = (Object[]) deserialize(blob, filter);
+            return values.length == fields.length ? new State(schema, fields, values) : null;
+        } catch (IllegalArgumentException | IllegalStateException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    static String signature(MethodDescriptor method) {
+        return method.getName() + Arrays.stream(method.getMethod().getParameterTypes())
+                .map(Class::getName)
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        writeBlob(output, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        ByteBuffer blob = readBlob(buffer);
+        byte[] bytes = new byte[blob.remaining()];
+        blob.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBlob(DataOutputStream output, byte[] blob) throws IOException {
+        output.writeInt(blob.length);
+        output.write(blob);
+    }
+
+    /**
+     * @return часть буфера длиной, записанной перед ней; позиция буфера сдвигается за её конец
+     */
+    private static ByteBuffer readBlob(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer blob = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return blob;
+    }
+}
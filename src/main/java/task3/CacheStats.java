@@ -0,0 +1,73 @@
+package task3;
+
+import lombok.Getter;
+
+/**
+ * Неизменяемый снимок статистики кэша для одного метода.
+ * Время вызова оригинального метода (loadTime) указывается в наносекундах
+ */
+@Getter
+public final class CacheStats {
+    private final String methodName;
+    private final long hitCount;
+    private final long missCount;
+    private final long loadCount;
+    private final long totalLoadTime;
+    private final long maxLoadTime;
+    // Количество смен состояния, от которого зависит результат метода
+    private final long stateSwitchCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    // Количество результатов, обновлённых заранее в фоне
+    private final long refreshCount;
+    // Количество вызовов в обход кэша и переходов в этот режим при адаптивном кэшировании
+    private final long bypassCount;
+    private final long bypassSwitchCount;
+
+    public CacheStats(String methodName, long hitCount, long missCount, long loadCount, long totalLoadTime,
+                      long maxLoadTime, long stateSwitchCount, long evictionCount, long expirationCount,
+                      long refreshCount, long bypassCount, long bypassSwitchCount) {
+        this.methodName = methodName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.totalLoadTime = totalLoadTime;
+        this.maxLoadTime = maxLoadTime;
+        this.stateSwitchCount = stateSwitchCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.refreshCount = refreshCount;
+        this.bypassCount = bypassCount;
+        this.bypassSwitchCount = bypassSwitchCount;
+    }
+
+    /**
+     * @return доля обращений, результат которых взят из кэша, от 0 до 1
+     */
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    public long getAverageLoadTime() {
+        return loadCount == 0 ? 0 : totalLoadTime / loadCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "methodName=" + methodName +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", loadCount=" + loadCount +
+                ", totalLoadTime=" + totalLoadTime +
+                ", maxLoadTime=" + maxLoadTime +
+                ", stateSwitchCount=" + stateSwitchCount +
+                ", evictionCount=" + evictionCount +
+                ", expirationCount=" + expirationCount +
+                ", refreshCount=" + refreshCount +
+                ", bypassCount=" + bypassCount +
+                ", bypassSwitchCount=" + bypassSwitchCount +
+                '}';
+    }
+}
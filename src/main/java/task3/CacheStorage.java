@@ -0,0 +1,88 @@
+package task3;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище результатов кэша: записи по состояниям, методам и аргументам, канонические состояния,
+ * очередь вытеснения, индекс устаревания и выполняющиеся вызовы.
+ * Каждый {@link MyCache} создаёт собственное хранилище, а прокси одной области {@link CacheScope}
+ * для объектов одного класса используют общее.
+ * Ограничения размера, источник времени и параметры внешней памяти относятся к хранилищу,
+ * так как размер, очередь вытеснения и индекс устаревания у прокси общие
+ */
+final class CacheStorage {
+    // Ширина корзины индекса устаревания записей (мс)
+    private static final long EXPIRY_RESOLUTION = 10;
+
+    final Map<State, Map<MethodDescriptor, Map<ArgumentsKey, CachedResult>>> cache = new ConcurrentHashMap<>();
+    // Канонические экземпляры состояний, для которых в кэше есть результаты
+    final Map<State, State> states = new ConcurrentHashMap<>();
+
+    // Очередь записей в порядке добавления для вытеснения (используется только при ограничении размера кэша)
+    final Queue<CachedResult> evictionQueue = new ConcurrentLinkedQueue<>();
+    final AtomicLong evictionQueueSize = new AtomicLong();
+    final AtomicLong size = new AtomicLong();
+    final AtomicLong weight = new AtomicLong();
+
+    // Записи кэша, упорядоченные по времени устаревания
+    final ExpiryIndex expiryIndex = new ExpiryIndex(EXPIRY_RESOLUTION);
+
+    // Выполняющиеся в данный момент вызовы методов вида CACHE
+    final Map<MyCache.LoadKey, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    // Хранилище результатов вне кучи, null если не используется
+    final OffHeapStore offHeapStore;
+
+    final Ticker ticker;
+    final long maximumSize;
+    final long maximumWeight;
+    // null, если вес каждой записи равен 1
+    final Weigher weigher;
+    final long offHeapCapacity;
+    final int offHeapThreshold;
+    final int offHeapPromotion;
+
+    // Количество прокси, использующих хранилище области (изменяется только в CacheScope под блокировкой Map)
+    int users;
+
+    CacheStorage(CacheConfig config) {
+        ticker = config.getTicker();
+        maximumSize = config.getMaximumSize();
+        maximumWeight = config.getMaximumWeight();
+        weigher = config.getWeigher();
+        offHeapCapacity = config.getOffHeapCapacity();
+        offHeapThreshold = config.getOffHeapThreshold();
+        offHeapPromotion = config.getOffHeapPromotion();
+        offHeapStore = offHeapCapacity > 0 ? new OffHeapStore(offHeapCapacity) : null;
+    }
+
+    boolean isBounded() {
+        return maximumSize > 0 || maximumWeight > 0;
+    }
+
+    boolean isOverflowed() {
+        return (maximumSize > 0 && size.get() > maximumSize) || (maximumWeight > 0 && weight.get() > maximumWeight);
+    }
+
+    int weigh(ArgumentsKey key, Object result) {
+        return weigher == null ? 1 : weigher.weigh(key, result);
+    }
+
+    /**
+     * Проверяет, что настройки хранилища совпадают с настройками {@code config}
+     */
+    boolean isConfiguredAs(CacheConfig config) {
+        return ticker == config.getTicker()
+                && maximumSize == config.getMaximumSize()
+                && maximumWeight == config.getMaximumWeight()
+                && weigher == config.getWeigher()
+                && offHeapCapacity == config.getOffHeapCapacity()
+                && offHeapThreshold == config.getOffHeapThreshold()
+                && offHeapPromotion == config.getOffHeapPromotion();
+    }
+}
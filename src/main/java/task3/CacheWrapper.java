@@ -0,0 +1,35 @@
+package task3;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Обёртка кэшируемого объекта, сгенерированная {@link CacheProcessor} при компиляции.
+ * Если для класса объекта есть обёртка, {@link Utils#cache} создаёт её вместо динамического прокси
+ */
+public interface CacheWrapper {
+    MyCache getCache();
+
+    /**
+     * Передаёт исключение из метода обёртки так же, как динамический прокси: непроверяемые исключения
+     * и исключения, объявленные методом ({@code declared}), - как есть, остальные - в UndeclaredThrowableException
+     *
+     * @return не возвращает значение, тип позволяет писать {@code throw CacheWrapper.propagate(...)}
+     */
+    static RuntimeException propagate(Throwable exception, Class<?>... declared) {
+        if (exception instanceof RuntimeException runtimeException)
+            throw runtimeException;
+        if (exception instanceof Error error)
+            throw error;
+
+        for (Class<?> type : declared) {
+            if (type.isInstance(exception))
+                throw CacheWrapper.<RuntimeException>sneakyThrow(exception);
+        }
+        throw new UndeclaredThrowableException(exception);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> RuntimeException sneakyThrow(Throwable exception) throws E {
+        throw (E) exception;
+    }
+}
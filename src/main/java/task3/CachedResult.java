@@ -1,26 +1,137 @@
 package task3;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 public class CachedResult {
+    // Результат записи, память которой освобождена (см. OffHeapResult): запись недоступна, как при промахе
+    static final Object RELEASED = new Object();
+
+    private static final AtomicIntegerFieldUpdater<CachedResult> REFRESHING =
+            AtomicIntegerFieldUpdater.newUpdater(CachedResult.class, "refreshing");
+
+    // Изменяется при обращении к записи и читается потоком очистки кэша
     @Getter
     @Setter
-    private long expired;
+    private volatile long expired;
     @Getter
     private final Object result;
-    private final Object[] callParameters;
+    @Getter
+    private final ArgumentsKey key;
+    @Getter
+    private final State state;
+    @Getter
+    private final MethodDescriptor method;
+    // Map, в которой хранится запись
+    @Getter(AccessLevel.PACKAGE)
+    private final Map<ArgumentsKey, CachedResult> owner;
+    @Getter
+    private final int weight;
+    // Было ли обращение к записи с момента последней проверки при вытеснении
+    private volatile boolean accessed;
+    @Getter
+    private volatile boolean removed;
+    // Выполняется фоновое обновление результата (1) или нет (0)
+    private volatile int refreshing;
+    // Корзина индекса устаревания, в которой учтена запись (см. ExpiryIndex), null если запись не учтена
+    volatile ExpiryIndex.Bucket expiryBucket;
 
-    public CachedResult(Object result, Object[] callParameters, long expired) {
+    public CachedResult(Object result, ArgumentsKey key, long expired,
+                        State state, MethodDescriptor method, Map<ArgumentsKey, CachedResult> owner, int weight) {
         this.expired = expired;
         this.result = result;
-        this.callParameters = callParameters;
+        this.key = key;
+        this.state = state;
+        this.method = method;
+        this.owner = owner;
+        this.weight = weight;
+    }
+
+    /**
+     * @return {@code true} если результатом записи является исключение метода ({@link FailedResult})
+     */
+    boolean isFailed() {
+        return false;
     }
 
     public Object[] getCallParameters() {
-        return callParameters == null ? null : Arrays.copyOf(callParameters, callParameters.length);
+        return key == ArgumentsKey.EMPTY ? null : key.toArray();
+    }
+
+    void markAccessed() {
+        if (!accessed)
+            accessed = true;
+    }
+
+    /**
+     * Сбрасывает признак обращения к записи
+     *
+     * @return {@code true} если к записи обращались с момента предыдущего сброса
+     */
+    boolean resetAccessed() {
+        if (!accessed)
+            return false;
+        accessed = false;
+        return true;
+    }
+
+    /**
+     * Отмечает начало фонового обновления результата
+     *
+     * @return {@code true} если обновление не выполнялось и должно быть запущено вызывающим потоком
+     */
+    boolean startRefresh() {
+        return refreshing == 0 && REFRESHING.compareAndSet(this, 0, 1);
+    }
+
+    void cancelRefresh() {
+        refreshing = 0;
+    }
+
+    /**
+     * Заменяет запись в кэше записью {@code replacement} с новым результатом для тех же аргументов и состояния
+     *
+     * @return {@code true} если запись была заменена этим вызовом
+     */
+    boolean replaceWith(CachedResult replacement) {
+        if (removed || !owner.replace(key, this, replacement))
+            return false;
+        removed = true;
+        release();
+        return true;
+    }
+
+    /**
+     * Удаляет запись из кэша
+     *
+     * @return {@code true} если запись была удалена этим вызовом
+     */
+    boolean remove() {
+        if (removed || !owner.remove(key, this))
+            return false;
+        removed = true;
+        release();
+        return true;
+    }
+
+    /**
+     * Сериализованный результат для снимка {@link CacheSnapshot}
+     *
+     * @return данные или {@code null}, если результат недоступен или не сериализуем
+     */
+    byte[] serializeResult() {
+        Object result = getResult();
+        return result == RELEASED ? null : CacheSnapshot.serialize(result);
+    }
+
+    /**
+     * Освобождает ресурсы записи после её удаления из кэша
+     */
+    void release() {
     }
 
     @Override
@@ -28,7 +139,7 @@ public class CachedResult {
         return "CachedResult{" +
                 "expired=" + expired +
                 ", result=" + result +
-                ", callParameters=" + Arrays.toString(callParameters) +
+                ", callParameters=" + key +
                 '}';
     }
 }
@@ -0,0 +1,33 @@
+package task3;
+
+/**
+ * Источник времени пониженной точности: текущее время обновляется фоновым потоком раз в {@code precision} мс,
+ * а чтение времени сводится к чтению volatile-поля без системного вызова.
+ * Погрешность не превышает {@code precision} мс.
+ * Поток обновления не останавливается, поэтому экземпляр один на процесс и доступен через {@link Ticker#coarse()}
+ */
+public final class CoarseTicker implements Ticker {
+    static final CoarseTicker DEFAULT = new CoarseTicker(1);
+
+    private volatile long now = System.currentTimeMillis();
+
+    private CoarseTicker(long precision) {
+        Thread thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(precision);
+                    now = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "my-cache-ticker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public long read() {
+        return now;
+    }
+}
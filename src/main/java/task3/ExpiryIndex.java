@@ -0,0 +1,131 @@
+package task3;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Индекс записей кэша, упорядоченный по времени устаревания.
+ * Записи раскладываются по корзинам шириной {@code resolution} мс в соответствии со значением expired.
+ * Запись учитывается в размере одной корзины - той, в которую она добавлена последней: при переносе записи
+ * в другую корзину ({@link #add} после продления времени жизни) и при удалении записи ({@link #remove})
+ * размер прежней корзины уменьшается. Сама запись остаётся в очереди прежней корзины и пропускается при её обработке.
+ * Продление времени жизни, не переносящее запись в другую корзину, индекс не меняет: при обработке корзины запись,
+ * время жизни которой было продлено, переносится в корзину, соответствующую новому значению expired.
+ * Таким образом, очистка кэша обрабатывает только корзины, время которых уже прошло, а не весь кэш
+ */
+final class ExpiryIndex {
+    private static final AtomicReferenceFieldUpdater<CachedResult, Bucket> BUCKET =
+            AtomicReferenceFieldUpdater.newUpdater(CachedResult.class, Bucket.class, "expiryBucket");
+
+    private final long resolution;
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    ExpiryIndex(long resolution) {
+        this.resolution = resolution;
+    }
+
+    /**
+     * Добавляет запись в корзину, соответствующую её значению expired.
+     * Если запись уже учтена в другой корзине, она переносится; повторное добавление в ту же корзину ничего не делает
+     */
+    void add(CachedResult cachedResult) {
+        while (true) {
+            long slot = cachedResult.getExpired() / resolution;
+            Bucket bucket = buckets.computeIfAbsent(slot, s -> new Bucket());
+            Bucket previous = BUCKET.getAndSet(cachedResult, bucket);
+            if (previous != bucket) {
+                bucket.size.incrementAndGet();
+                if (previous != null)
+                    previous.size.decrementAndGet();
+            }
+            // Удалённая параллельно запись не должна оставаться учтённой
+            if (cachedResult.isRemoved()) {
+                remove(cachedResult);
+                return;
+            }
+
+            if (previous == bucket ? !bucket.closed : bucket.add(cachedResult))
+                return;
+            // Корзина уже обрабатывается очисткой: запись добавляется в новую корзину
+            buckets.remove(slot, bucket);
+        }
+    }
+
+    /**
+     * Исключает удалённую из кэша запись из размера её корзины
+     */
+    void remove(CachedResult cachedResult) {
+        Bucket bucket = BUCKET.getAndSet(cachedResult, null);
+        if (bucket != null)
+            bucket.size.decrementAndGet();
+    }
+
+    /**
+     * Оценивает количество устаревших записей: записи, учтённые в корзинах, время которых прошло.
+     * Удалённые и перенесённые в другие корзины записи не учитываются. Оценка завышена на количество записей,
+     * время жизни которых было продлено в пределах корзины, и занижена на устаревшие записи текущей корзины
+     */
+    int countExpired(long timestamp) {
+        int count = 0;
+        for (Bucket bucket : buckets.headMap(timestamp / resolution).values()) {
+            count += bucket.size.get();
+        }
+        return count;
+    }
+
+    /**
+     * Обрабатывает корзины, время которых прошло: устаревшие записи передаются в {@code onExpired},
+     * записи с продлённым временем жизни переносятся в соответствующие корзины
+     */
+    void expire(long timestamp, Consumer<CachedResult> onExpired) {
+        ConcurrentNavigableMap<Long, Bucket> due = buckets.headMap(timestamp / resolution);
+        for (Map.Entry<Long, Bucket> entry : due.entrySet()) {
+            if (!buckets.remove(entry.getKey(), entry.getValue()))
+                continue;
+
+            Bucket bucket = entry.getValue();
+            bucket.close();
+            CachedResult cachedResult;
+            while ((cachedResult = bucket.entries.poll()) != null) {
+                // Запись удалена, перенесена в другую корзину или уже обработана
+                if (cachedResult.isRemoved() || cachedResult.expiryBucket != bucket)
+                    continue;
+
+                if (cachedResult.getExpired() < timestamp)
+                    onExpired.accept(cachedResult);
+                else
+                    add(cachedResult);
+            }
+        }
+    }
+
+    static final class Bucket {
+        private final Queue<CachedResult> entries = new ConcurrentLinkedQueue<>();
+        // Количество записей, учтённых в корзине
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile boolean closed;
+
+        /**
+         * @return {@code false} если корзина закрыта для добавления
+         */
+        private boolean add(CachedResult cachedResult) {
+            if (closed)
+                return false;
+
+            entries.add(cachedResult);
+            // Если корзина была закрыта параллельно, запись могла не попасть в обработку.
+            // Повторное добавление в другую корзину допустимо: обработка записи идемпотентна
+            return !closed;
+        }
+
+        private void close() {
+            closed = true;
+        }
+    }
+}
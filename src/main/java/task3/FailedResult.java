@@ -0,0 +1,20 @@
+package task3;
+
+import java.util.Map;
+
+/**
+ * Запись кэша, результатом которой является исключение, выброшенное методом ({@link Cache#failureLifetime()}).
+ * При обращении к записи исключение выбрасывается повторно, время жизни записи не продлевается.
+ * Запись не переносится во внешнюю память и не попадает в снимки и удалённый уровень кэша
+ */
+final class FailedResult extends CachedResult {
+    FailedResult(Throwable exception, ArgumentsKey key, long expired, State state, MethodDescriptor method,
+                 Map<ArgumentsKey, CachedResult> owner) {
+        super(exception, key, expired, state, method, owner, 1);
+    }
+
+    @Override
+    boolean isFailed() {
+        return true;
+    }
+}
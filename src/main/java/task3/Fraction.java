@@ -3,6 +3,7 @@ package task3;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class Fraction implements Fractionable {
+    @StateIgnore
     private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
 
     private int num;
@@ -25,7 +26,7 @@ public class Fraction implements Fractionable {
         return (double) num / denum;
     }
 
-    @Cache(lifetime = 100)
+    @Cache(lifetime = 100, dependsOn = "num")
     @Override
     public int intValue() {
         System.out.println("intValue");
@@ -33,14 +34,14 @@ public class Fraction implements Fractionable {
         return num;
     }
 
-    @Mutator
+    @Mutator(changes = "num")
     @Override
     public void setNum(int num) {
         this.num = num;
     }
 
 
-    @Mutator
+    @Mutator(changes = "denum")
     @Override
     public void setDenum(int denum) {
         this.denum = denum;
@@ -0,0 +1,91 @@
+package task3;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Удалённый уровень кэша в памяти процесса: узлы, подключённые через {@link #connect()}, используют общее хранилище,
+ * а результаты рассылаются подписчикам остальных узлов в вызывающем потоке.
+ * Предназначен для проверки двухуровневого кэша на одной машине.
+ * Устаревшие результаты удаляются при обращении к ним, размер хранилища не ограничивается
+ */
+public final class InMemoryRemoteTier {
+    private final Ticker ticker;
+    private final Map<RemoteKey, Stored> entries = new ConcurrentHashMap<>();
+    private final List<Node> nodes = new CopyOnWriteArrayList<>();
+
+    public InMemoryRemoteTier() {
+        this(Ticker.SYSTEM);
+    }
+
+    public InMemoryRemoteTier(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return подключение нового узла
+     */
+    public RemoteTier connect() {
+        Node node = new Node();
+        nodes.add(node);
+        return node;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private record Stored(byte[] result, long expired) {
+    }
+
+    private final class Node implements RemoteTier {
+        private final List<WeakReference<BiConsumer<RemoteKey, Entry>>> listeners = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Entry get(RemoteKey key) {
+            Stored stored = entries.get(key);
+            if (stored == null)
+                return null;
+
+            long lifetime = stored.expired() - ticker.read();
+            if (lifetime <= 0) {
+                entries.remove(key, stored);
+                return null;
+            }
+            return new Entry(stored.result(), lifetime);
+        }
+
+        @Override
+        public void put(RemoteKey key, Entry entry) {
+            entries.put(key, new Stored(entry.result(), ticker.read() + entry.lifetime()));
+            for (Node node : nodes) {
+                if (node != this)
+                    node.deliver(key, entry);
+            }
+        }
+
+        @Override
+        public void subscribe(BiConsumer<RemoteKey, Entry> listener) {
+            listeners.add(new WeakReference<>(listener));
+        }
+
+        @Override
+        public void unsubscribe(BiConsumer<RemoteKey, Entry> listener) {
+            listeners.removeIf(reference -> reference.get() == null || reference.get() == listener);
+        }
+
+        private void deliver(RemoteKey key, Entry entry) {
+            for (WeakReference<BiConsumer<RemoteKey, Entry>> reference : listeners) {
+                BiConsumer<RemoteKey, Entry> listener = reference.get();
+                if (listener == null)
+                    listeners.remove(reference);
+                else
+                    listener.accept(key, entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package task3;
+
+import java.io.ObjectInputFilter;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Запись кэша, загруженная из снимка {@link CacheSnapshot}.
+ * Результат хранится сериализованным в отображённом в память файле и декодируется при первом обращении,
+ * после чего ссылка на файл освобождается.
+ * Если результат не удаётся декодировать (класс результата изменился или отклонён фильтром),
+ * запись считается недоступной
+ */
+final class MappedResult extends CachedResult {
+    // Сериализованный результат, null после декодирования
+    private ByteBuffer data;
+    private final ObjectInputFilter filter;
+    private Object result;
+    private volatile boolean decoded;
+
+    MappedResult(ByteBuffer data, ObjectInputFilter filter, ArgumentsKey key, long expired, State state,
+                 MethodDescriptor method, Map<ArgumentsKey, CachedResult> owner, int weight) {
+        super(null, key, expired, state, method, owner, weight);
+        this.data = data;
+        this.filter = filter;
+    }
+
+    @Override
+    public Object getResult() {
+        if (decoded)
+            return result;
+
+        synchronized (this) {
+            if (!decoded) {
+                try {
+                    result = CacheSnapshot.deserialize(data, filter);
+                } catch (IllegalStateException e) {
+                    result = RELEASED;
+                }
+                data = null;
+                decoded = true;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Пока результат не декодирован, в снимок копируются его данные из отображённого файла
+     */
+    @Override
+    byte[] serializeResult() {
+        synchronized (this) {
+            if (!decoded) {
+                byte[] bytes = new byte[data.remaining()];
+                data.duplicate().get(bytes);
+                return bytes;
+            }
+        }
+        return super.serializeResult();
+    }
+}
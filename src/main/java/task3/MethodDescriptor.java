@@ -0,0 +1,210 @@
+package task3;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Неизменяемое описание метода проксируемого объекта с точки зрения кэша:
+ * ссылка на метод оригинального класса, вид метода, время жизни кэша и поля состояния,
+ * которые метод читает (для {@link Cache}) или изменяет (для {@link Mutator}).
+ * Описания строятся один раз для каждого класса и затем переиспользуются всеми его прокси,
+ * поэтому при вызове метода через прокси не требуется ни поиск метода через рефлексию, ни разбор аннотаций.
+ * Вызов оригинального метода выполняется через заранее подготовленный {@link MethodHandle}:
+ * исключения метода пробрасываются без обёртки в InvocationTargetException
+ */
+@Getter
+public final class MethodDescriptor {
+    public enum Kind {
+        // Результат метода кэшируется (аннотация Cache)
+        CACHE,
+        // Метод изменяет состояние объекта (аннотация Mutator)
+        MUTATOR,
+        // Метод вызывается напрямую
+        PASSTHROUGH
+    }
+
+    // Единый тип обработчика вызова: (target, args) -> result
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private static final ClassValue<Map<Method, MethodDescriptor>> DESCRIPTORS = new ClassValue<>() {
+        @Override
+        protected Map<Method, MethodDescriptor> computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    // Метод интерфейса, через который выполняется вызов
+    private final Method method;
+    // Одноименный метод из проксируемого класса
+    private final Method targetMethod;
+    private final Kind kind;
+    // Время жизни кэша (мс) для методов вида CACHE
+    private final long lifetime;
+    // Окно обновления результата заранее (мс) для методов вида CACHE, 0 - без обновления
+    private final long refreshAhead;
+    // Время жизни исключения метода вида CACHE (мс), 0 - исключения не кэшируются
+    private final long failureLifetime;
+    // Порядковый номер среди методов вида CACHE класса, -1 для остальных
+    private final int slot;
+    // Метод вида CACHE возвращает CompletableFuture: время жизни результата отсчитывается от завершения future
+    private final boolean async;
+    // Индексы полей состояния, от которых зависит результат (CACHE) или которые изменяются (MUTATOR)
+    @Getter(AccessLevel.NONE)
+    private final int[] fields;
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle invoker;
+
+    private MethodDescriptor(Method method, Method targetMethod, StateSchema schema, int slot) {
+        this.method = method;
+        this.targetMethod = targetMethod;
+
+        Cache cache = targetMethod.getAnnotation(Cache.class);
+        Mutator mutator = targetMethod.getAnnotation(Mutator.class);
+        if (cache != null) {
+            this.kind = Kind.CACHE;
+            this.lifetime = cache.lifetime();
+            this.refreshAhead = cache.refreshAhead();
+            this.failureLifetime = cache.failureLifetime();
+            this.slot = slot;
+            this.fields = schema.indexesOf(cache.dependsOn());
+        } else if (mutator != null) {
+            this.kind = Kind.MUTATOR;
+            this.lifetime = 0;
+            this.refreshAhead = 0;
+            this.failureLifetime = 0;
+            this.slot = -1;
+            this.fields = schema.indexesOf(mutator.changes());
+        } else {
+            this.kind = Kind.PASSTHROUGH;
+            this.lifetime = 0;
+            this.refreshAhead = 0;
+            this.failureLifetime = 0;
+            this.slot = -1;
+            this.fields = schema.indexesOf();
+        }
+
+        this.async = kind == Kind.CACHE && CompletableFuture.class.isAssignableFrom(method.getReturnType());
+        this.invoker = createInvoker(method);
+    }
+
+    /**
+     * Вызывает метод на объекте {@code target}.
+     * Исключение, выброшенное методом, пробрасывается как есть
+     */
+    public Object invoke(Object target, Object[] args) throws Throwable {
+        return invoker.invokeExact(target, args);
+    }
+
+    /**
+     * Создаёт обработчик вызова метода интерфейса с сигнатурой {@link #INVOKER_TYPE}.
+     * Вызов через метод интерфейса выполняется виртуально, поэтому класс объекта может быть и непубличным
+     */
+    private static MethodHandle createInvoker(Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            try {
+                handle = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup())
+                        .unreflect(method);
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        return handle.asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+    }
+
+    public String getName() {
+        return method.getName();
+    }
+
+    /**
+     * @return индексы полей, от которых зависит результат метода вида CACHE
+     */
+    public int[] getDependencies() {
+        return fields;
+    }
+
+    /**
+     * @return индексы полей, которые изменяет метод вида MUTATOR
+     */
+    public int[] getChanges() {
+        return fields;
+    }
+
+    /**
+     * Возвращает таблицу описаний всех методов, которые могут быть вызваны через прокси объекта указанного класса:
+     * методов всех его интерфейсов и методов equals, hashCode, toString класса Object
+     */
+    public static Map<Method, MethodDescriptor> forClass(Class<?> targetClass) {
+        return DESCRIPTORS.get(targetClass);
+    }
+
+    private static Map<Method, MethodDescriptor> resolve(Class<?> targetClass) {
+        Map<Method, MethodDescriptor> descriptors = new HashMap<>();
+        List<Method> methods = new ArrayList<>();
+
+        for (Class<?> type = targetClass; type != null; type = type.getSuperclass()) {
+            for (Class<?> anInterface : type.getInterfaces()) {
+                methods.addAll(Arrays.asList(anInterface.getMethods()));
+            }
+        }
+        for (String name : new String[]{"equals", "hashCode", "toString"}) {
+            for (Method method : Object.class.getMethods()) {
+                if (method.getName().equals(name)) {
+                    methods.add(method);
+                }
+            }
+        }
+
+        StateSchema schema = StateSchema.forClass(targetClass);
+        int slot = 0;
+        for (Method method : methods) {
+            if (descriptors.containsKey(method))
+                continue;
+
+            MethodDescriptor descriptor = new MethodDescriptor(method, getTargetMethod(targetClass, method), schema, slot);
+            if (descriptor.getKind() == Kind.CACHE)
+                slot++;
+            descriptors.put(method, descriptor);
+        }
+
+        return Collections.unmodifiableMap(descriptors);
+    }
+
+    /**
+     * Возвращает ссылку на одноименный метод из проксируемого класса
+     *
+     * @return ссылка на метод из оригинального класса {@code targetClass}
+     */
+    private static Method getTargetMethod(Class<?> targetClass, Method method) {
+        try {
+            return targetClass.getMethod(method.getName(), method.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MethodDescriptor{" +
+                "method=" + targetMethod +
+                ", kind=" + kind +
+                ", lifetime=" + lifetime +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package task3;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики работы кэша для одного метода вида CACHE одного кэшируемого объекта.
+ * Счётчики не создают конкуренции между потоками при обновлении, согласованный снимок не гарантируется
+ */
+final class MethodStats {
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder loads = new LongAdder();
+    final LongAdder totalLoadTime = new LongAdder();
+    final LongAccumulator maxLoadTime = new LongAccumulator(Math::max, 0);
+    final LongAdder stateSwitches = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder expirations = new LongAdder();
+    final LongAdder refreshes = new LongAdder();
+    // Выборочные измерения времени поиска в кэше (AdaptivePolicy)
+    final LongAdder lookups = new LongAdder();
+    final LongAdder totalLookupTime = new LongAdder();
+    // Вызовы в обход кэша и переходы в этот режим (AdaptivePolicy)
+    final LongAdder bypasses = new LongAdder();
+    final LongAdder bypassSwitches = new LongAdder();
+
+    void recordLoad(long loadTime) {
+        loads.increment();
+        totalLoadTime.add(loadTime);
+        maxLoadTime.accumulate(loadTime);
+    }
+
+    void recordLookup(long lookupTime) {
+        lookups.increment();
+        totalLookupTime.add(lookupTime);
+    }
+
+    CacheStats snapshot(String methodName) {
+        return new CacheStats(
+                methodName,
+                hits.sum(),
+                misses.sum(),
+                loads.sum(),
+                totalLoadTime.sum(),
+                maxLoadTime.get(),
+                stateSwitches.sum(),
+                evictions.sum(),
+                expirations.sum(),
+                refreshes.sum(),
+                bypasses.sum(),
+                bypassSwitches.sum()
+        );
+    }
+}
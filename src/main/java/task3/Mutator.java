@@ -8,4 +8,9 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Mutator {
+    /**
+     * Имена полей, которые может изменить метод.
+     * После вызова перечитываются только эти поля. Если не задано, перечитываются все поля объекта
+     */
+    String[] changes() default {};
 }
@@ -1,32 +1,110 @@
 package task3;
 
-import java.lang.annotation.Annotation;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
-public class MyCache implements InvocationHandler {
+public class MyCache implements InvocationHandler, MyCacheMXBean {
+    // Доля времени жизни, на которую должно сдвинуться время устаревания записи для его обновления при обращении
+    private static final long REFRESH_FRACTION = 16;
+    // Признак результата, полученного во время выполнения мутатора
+    private static final Object INCONSISTENT = new Object();
+    // Время устаревания записи с незавершённым результатом асинхронного метода
+    private static final long IN_FLIGHT = Long.MAX_VALUE;
+    // Результаты, которые не переносятся во внешнюю память: их сериализованная форма больше самого объекта
+    private static final Set<Class<?>> ON_HEAP_TYPES = Set.of(Boolean.class, Character.class, Byte.class,
+            Short.class, Integer.class, Long.class, Float.class, Double.class);
+
     private final Object target;
-    private final Map<State, Map<Method, Set<CachedResult>>> cache = new ConcurrentHashMap<>();
-    private final Map<Method, Set<Annotation>> methodsAnnotations = new HashMap<>();
-    private final Map<Method, Long> methodsCacheLifetime = new HashMap<>();
+    private final CacheConfig config;
+    // Источник времени хранилища: время устаревания записей общего хранилища отсчитывается по одному источнику
+    private final Ticker ticker;
+    private final Map<State, Map<MethodDescriptor, Map<ArgumentsKey, CachedResult>>> cache;
+    // Таблица методов прокси, общая для всех объектов одного класса
+    private final Map<Method, MethodDescriptor> descriptors;
+    // Методы вида CACHE в порядке их номеров MethodDescriptor.getSlot()
+    private final MethodDescriptor[] cacheMethods;
+    private final StateSchema stateSchema;
+    // Канонические экземпляры состояний, для которых в кэше есть результаты
+    private final Map<State, State> states;
+    // Полный снимок текущего состояния объекта
     private volatile State currentState;
+    // Проекции текущего состояния на поля, от которых зависит каждый из методов вида CACHE
+    private volatile State[] methodStates;
+
+    // Блокировка на запись удерживается на время вызова метода-мутатора и смены состояния.
+    // Чтение из кэша выполняется без блокировки, а результат вызова метода вида CACHE записывается в кэш,
+    // только если за время вызова не выполнялся ни один мутатор (проверка оптимистичной метки)
+    private final StampedLock stateLock = new StampedLock();
+
+    // Хранилище результатов: собственное или общее для прокси одной области CacheScope.
+    // Ограничения размера берутся из хранилища, а его структуры скопированы в поля ниже
+    private final CacheStorage storage;
+    private final Queue<CachedResult> evictionQueue;
+    private final AtomicLong evictionQueueSize;
+    private final AtomicLong size;
+    private final AtomicLong weight;
+
+    // Статистика методов вида CACHE по номерам MethodDescriptor.getSlot()
+    private final MethodStats[] stats;
+    // Решения об обходе кэша по номерам MethodDescriptor.getSlot(), null если адаптивное кэширование не используется
+    private final AdaptivePolicy[] policies;
+    private volatile ObjectName objectName;
+
+    private final ExpiryIndex expiryIndex;
+    private final Map<LoadKey, CompletableFuture<Object>> loads;
 
-    private final ReadWriteLock stateLock = new ReentrantReadWriteLock();
-    private final ReadWriteLock writeToCacheLock = new ReentrantReadWriteLock();
+    // Последняя найденная или добавленная запись метода без аргументов по номерам MethodDescriptor.getSlot().
+    // Пока состояние метода не меняется, результат берётся из неё без поиска по Map состояний и аргументов
+    private final AtomicReferenceArray<CachedResult> lastResults;
+
+    private final OffHeapStore offHeapStore;
+
+    // Удалённый уровень кэша, null если не используется
+    private final RemoteTier remoteTier;
+    // Методы вида CACHE по сигнатурам в ключах удалённого уровня
+    private final Map<String, MethodDescriptor> remoteMethods;
+    // Подписчик на результаты других узлов. Удерживается прокси: уровень хранит на него слабую ссылку
+    private final BiConsumer<RemoteKey, RemoteTier.Entry> remoteListener;
+    // Фильтр десериализации снимков и данных удалённого уровня
+    private final ObjectInputFilter deserializationFilter;
 
 
     public void printCache() {
         for (State state : cache.keySet()) {
             System.out.println(state);
-            for (Method method : cache.get(state).keySet()) {
+            for (MethodDescriptor method : cache.get(state).keySet()) {
                 System.out.println("    " + method.getName());
-                for (CachedResult cachedResult : cache.get(state).get(method)) {
+                for (CachedResult cachedResult : cache.get(state).get(method).values()) {
                     System.out.println("     - " + cachedResult);
                 }
             }
@@ -34,272 +112,1010 @@ public class MyCache implements InvocationHandler {
     }
 
     public MyCache(Object object) {
+        this(object, CacheConfig.DEFAULT);
+    }
+
+    public MyCache(Object object, CacheConfig config) {
         this.target = object;
-        mapMethodAnnotations(object);
-        mapMethodCacheLifetime();
-        currentState = new State(target);
+        this.config = config;
+        this.descriptors = MethodDescriptor.forClass(object.getClass());
+        this.stateSchema = StateSchema.forClass(object.getClass());
+        CacheStorage storage = config.getScope() == null
+                ? new CacheStorage(config)
+                : config.getScope().storageFor(object.getClass(), config, this);
+        this.storage = storage;
+        this.ticker = storage.ticker;
+        this.cache = storage.cache;
+        this.states = storage.states;
+        this.evictionQueue = storage.evictionQueue;
+        this.evictionQueueSize = storage.evictionQueueSize;
+        this.size = storage.size;
+        this.weight = storage.weight;
+        this.expiryIndex = storage.expiryIndex;
+        this.loads = storage.loads;
+        this.offHeapStore = storage.offHeapStore;
+        this.cacheMethods = descriptors.values().stream()
+                .filter(d -> d.getKind() == MethodDescriptor.Kind.CACHE)
+                .sorted(Comparator.comparingInt(MethodDescriptor::getSlot))
+                .toArray(MethodDescriptor[]::new);
+
+        currentState = stateSchema.capture(target);
+        State[] projections = new State[cacheMethods.length];
+        for (MethodDescriptor cacheMethod : cacheMethods) {
+            State projection = currentState.project(cacheMethod.getDependencies());
+            projections[cacheMethod.getSlot()] = states.getOrDefault(projection, projection);
+        }
+        methodStates = projections;
+
+        stats = new MethodStats[cacheMethods.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new MethodStats();
+        }
+
+        if (config.isAdaptive()) {
+            policies = new AdaptivePolicy[cacheMethods.length];
+            for (int i = 0; i < policies.length; i++) {
+                policies[i] = new AdaptivePolicy(stats[i], config.getAdaptiveInterval(), ticker.read());
+            }
+        } else {
+            policies = null;
+        }
+
+        lastResults = new AtomicReferenceArray<>(cacheMethods.length);
+
+        deserializationFilter = config.getDeserializationFilter() != null
+                ? config.getDeserializationFilter()
+                : CacheSnapshot.defaultFilter(object.getClass());
+
+        remoteTier = config.getRemoteTier();
+        if (remoteTier != null) {
+            remoteMethods = Arrays.stream(cacheMethods)
+                    .collect(Collectors.toMap(CacheSnapshot::signature, method -> method));
+            remoteListener = this::acceptRemoteResult;
+            remoteTier.subscribe(remoteListener);
+        } else {
+            remoteMethods = Map.of();
+            remoteListener = null;
+        }
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodDescriptor descriptor = descriptors.get(method);
+        if (descriptor != null)
+            return invoke(descriptor, args);
+
+        // Метод интерфейса, не реализованного классом объекта: прокси создан не через Utils.
+        // Исключение метода передаётся без обёртки, как и для остальных методов
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Вызов метода по его описанию, без поиска описания по {@link Method}.
+     * Используется обёртками, сгенерированными {@link CacheProcessor}: описания методов класса
+     * они получают один раз при загрузке
+     */
+    public Object invoke(MethodDescriptor descriptor, Object[] args) throws Throwable {
         Object result;
-        if (isMethodAnnotated(method, Cache.class)) {
-            CachedResult cachedResult;
-            cachedResult = getResultFromCache(method, args);
+        if (descriptor.getKind() == MethodDescriptor.Kind.CACHE) {
+            MethodStats methodStats = stats[descriptor.getSlot()];
+            AdaptivePolicy policy = policies == null ? null : policies[descriptor.getSlot()];
+            boolean sampled = policy != null && AdaptivePolicy.sample();
+            if (policy != null && isBypassed(policy, sampled)) {
+                methodStats.bypasses.increment();
+                return invokeBypassed(descriptor, args);
+            }
 
-            if (cachedResult == null) {
-                try {
-                    // Между вызовом метода и записью его результата в кэш не должно меняться состояние
-                    // (вызываться метод-мутатор)
-                    stateLock.readLock().lock();
-                    result = method.invoke(target, args);
-                    putResultToCache(method, args, result);
-                } finally {
-                    stateLock.readLock().unlock();
-                }
-            } else {
-                return cachedResult.getResult();
+            ArgumentsKey key = ArgumentsKey.of(args);
+            // Метка снимается до чтения состояния: если к моменту записи результата в кэш метка
+            // станет недействительной, значит, состояние могло измениться во время вызова метода
+            long stamp = stateLock.tryOptimisticRead();
+            State state = methodStates[descriptor.getSlot()];
+            long lookupStart = sampled ? System.nanoTime() : 0;
+            CachedResult cachedResult = getResultFromCache(state, descriptor, key);
+
+            Object cached = resultOf(cachedResult);
+            if (sampled)
+                methodStats.recordLookup(System.nanoTime() - lookupStart);
+            if (cached != CachedResult.RELEASED) {
+                methodStats.hits.increment();
+                if (cachedResult.isFailed())
+                    throw (Throwable) cached;
+                refreshAhead(descriptor, cachedResult);
+                return cached;
             }
-        } else if (isMethodAnnotated(method, Mutator.class)) {
+            methodStats.misses.increment();
+
+            // Выполняется мутатор: метод вызывается после его завершения
+            if (stamp == 0)
+                return loadLocked(descriptor, key, args);
+
+            result = load(state, stamp, descriptor, key, args);
+        } else if (descriptor.getKind() == MethodDescriptor.Kind.MUTATOR) {
+            // Блокировка для исключения разрыва между изменением значений полей и сменой состояния
+            // Для избежания записи в кэш результата по состоянию, предшествующему вызову мутатора
+            long stamp = stateLock.writeLock();
             try {
-                // Блокировка для исключения разрыва между изменением значений полей и сменой состояния
-                // Для избежания записи в кэш результата по состоянию, предшествующему вызову мутатора
-                stateLock.writeLock().lock();
-                result = method.invoke(target, args);
-                changeState();
-                return result;
+                result = descriptor.invoke(target, args);
+                changeState(descriptor);
             } finally {
-                stateLock.writeLock().unlock();
+                stateLock.unlockWrite(stamp);
             }
         } else
-            result = method.invoke(target, args);
+            result = descriptor.invoke(target, args);
 
         return result;
     }
 
     /**
-     * Меняет текущее состояние кэшированного объекта
+     * Вызывает метод в обход кэша, результат в кэш не записывается.
+     * Как и при промахе, метод вызывается без блокировки, а результат, полученный во время выполнения мутатора,
+     * отбрасывается, и метод вызывается повторно под блокировкой чтения
      */
-    private void changeState() {
-        State newState = new State(target);
-        if (newState.equals(currentState))
-            return;
-
-        for (State state : cache.keySet()) {
-            if (newState.equals(state)) {
-                currentState = state;
-                return;
+    private Object invokeBypassed(MethodDescriptor descriptor, Object[] args) throws Throwable {
+        long stamp = stateLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                Object result = descriptor.invoke(target, args);
+                if (stateLock.validate(stamp))
+                    return result;
+            } catch (Exception e) {
+                if (stateLock.validate(stamp))
+                    throw e;
             }
         }
-        currentState = newState;
+
+        stamp = stateLock.readLock();
+        try {
+            return descriptor.invoke(target, args);
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
     }
 
     /**
-     * Метод помещает результат в кэш, предварительно накладывая блокировку на запись
+     * Проверяет, вызывается ли метод в обход кэша. Выбранный для измерения вызов ({@code sampled})
+     * также пересматривает решение, если период закончился
      */
-    private void putResultToCache(Method method, Object[] args, Object result) {
-        try {
-            writeToCacheLock.writeLock().lock();
-            Method targetMethod = getTargetMethod(method);
+    private boolean isBypassed(AdaptivePolicy policy, boolean sampled) {
+        if (sampled)
+            policy.evaluate(ticker.read());
+        return policy.isBypassed();
+    }
 
-            // Если другой поток успел записать тот же результат в кэш,
-            // то не нужно записывать повторно
-            if (getResultFromCache(targetMethod, args) != null) {
-                return;
+    /**
+     * Асинхронный вызов метода для фасада {@link Utils#cacheAsync}.
+     * Результат из кэша возвращается завершённым future без переключения потока,
+     * при промахе метод вида CACHE вызывается в {@code executor}.
+     * Остальные методы выполняются в вызывающем потоке, чтобы мутаторы применялись в порядке вызовов
+     */
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Object> invokeAsync(Method method, Object[] args, Executor executor) {
+        MethodDescriptor descriptor = descriptors.get(method);
+        if (descriptor == null || descriptor.getKind() != MethodDescriptor.Kind.CACHE || descriptor.isAsync()) {
+            try {
+                Object result = invoke(null, method, args);
+                if (descriptor != null && descriptor.isAsync())
+                    return (CompletableFuture<Object>) result;
+                return CompletableFuture.completedFuture(result);
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
             }
+        }
+
+        MethodStats methodStats = stats[descriptor.getSlot()];
+        AdaptivePolicy policy = policies == null ? null : policies[descriptor.getSlot()];
+        if (policy != null && isBypassed(policy, AdaptivePolicy.sample())) {
+            methodStats.bypasses.increment();
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return invokeBypassed(descriptor, args);
+                } catch (Throwable e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        }
+
+        ArgumentsKey key = ArgumentsKey.of(args);
+        long stamp = stateLock.tryOptimisticRead();
+        State state = methodStates[descriptor.getSlot()];
+        CachedResult cachedResult = getResultFromCache(state, descriptor, key);
 
-            long expired = System.currentTimeMillis() + methodsCacheLifetime.get(targetMethod);
+        Object cached = resultOf(cachedResult);
+        if (cached != CachedResult.RELEASED) {
+            methodStats.hits.increment();
+            if (cachedResult.isFailed())
+                return CompletableFuture.failedFuture((Throwable) cached);
+            refreshAhead(descriptor, cachedResult);
+            return CompletableFuture.completedFuture(cached);
+        }
+        methodStats.misses.increment();
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return stamp == 0
+                        ? loadLocked(descriptor, key, args)
+                        : load(state, stamp, descriptor, key, args);
+            } catch (Throwable e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
 
-            if (cache.containsKey(currentState)) {
-                Map<Method, Set<CachedResult>> map = cache.get(currentState);
-                if (map.containsKey(targetMethod)) {
-                    map.get(targetMethod).add(new CachedResult(result, args, expired));
-                } else {
-                    Set<CachedResult> set = new CopyOnWriteArraySet<>();
-                    set.add(new CachedResult(result, args, expired));
-                    map.put(targetMethod, set);
+    /**
+     * Вызывает оригинальный метод и помещает результат в кэш.
+     * Одновременные вызовы метода с одинаковыми аргументами в одном состоянии объединяются:
+     * метод вызывается одним потоком, остальные потоки ожидают и получают его результат.
+     * Исключение метода передаётся всем ожидающим потокам и попадает в кэш, только если задано
+     * {@link Cache#failureLifetime()}.
+     * Метод вызывается без блокировки. Если оптимистичная метка {@code stamp}, полученная до чтения состояния,
+     * стала недействительной, во время вызова выполнялся мутатор и результат мог быть получен по несогласованным
+     * полям: такой результат отбрасывается, и метод вызывается повторно под блокировкой чтения.
+     * Ожидающие потоки получают только результат для состояния {@code state}: если вызов был отброшен,
+     * они повторяют загрузку, так как поток, выполнявший вызов, мог быть другим прокси общей области
+     */
+    private Object load(State state, long stamp, MethodDescriptor method, ArgumentsKey key, Object[] args) throws Throwable {
+        LoadKey loadKey = new LoadKey(state, method, key);
+        while (true) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            CompletableFuture<Object> loading = loads.putIfAbsent(loadKey, future);
+            Object result;
+            if (loading != null) {
+                try {
+                    result = loading.join();
+                } catch (CompletionException e) {
+                    throw e.getCause();
                 }
             } else {
-                Map<Method, Set<CachedResult>> map = new ConcurrentHashMap<>();
-                Set<CachedResult> set = new CopyOnWriteArraySet<>();
-                set.add(new CachedResult(result, args, expired));
-                map.put(targetMethod, set);
-                cache.put(currentState, map);
+                try {
+                    result = loadResult(state, stamp, method, key, args);
+                } catch (Throwable e) {
+                    loads.remove(loadKey, future);
+                    future.completeExceptionally(e);
+                    throw e;
+                }
+                // Вызов удаляется до завершения, чтобы повторная загрузка ожидающих потоков не получила его снова
+                loads.remove(loadKey, future);
+                future.complete(result);
             }
+
+            if (result != INCONSISTENT)
+                return result;
+            // Мутатор этого прокси меняет состояние: метод вызывается для нового состояния после его завершения
+            if (!stateLock.validate(stamp))
+                return loadLocked(method, key, args);
+        }
+    }
+
+    /**
+     * Вызывает метод под блокировкой чтения: мутаторы не выполняются, пока метод читает поля объекта.
+     * Используется, когда оптимистичное чтение невозможно или не удалось.
+     * Ожидание чужих загрузок здесь не выполняется: поток, удерживающий блокировку чтения,
+     * не должен ждать поток, которому самому может понадобиться эта блокировка
+     */
+    private Object loadLocked(MethodDescriptor method, ArgumentsKey key, Object[] args) throws Throwable {
+        long stamp = stateLock.readLock();
+        try {
+            return loadResult(methodStates[method.getSlot()], stamp, method, key, args);
         } finally {
-            writeToCacheLock.writeLock().unlock();
+            stateLock.unlockRead(stamp);
         }
     }
 
     /**
-     * Получение результата их кэша.
-     * Накладывает разделяемую блокировку для предотвращения изменения текущего состояния currentState
-     * в момент чтения из кэша
+     * Получает результат из кэша, удалённого уровня или вызовом метода и помещает его в кэш.
      *
-     * @return кэшированное значение для указанного метода и списка аргументов
+     * @return результат или {@link #INCONSISTENT}, если за время вызова метка {@code stamp} стала недействительной
      */
-    private CachedResult getResultFromCache(Method method, Object[] args) {
+    private Object loadResult(State state, long stamp, MethodDescriptor method, ArgumentsKey key,
+                              Object[] args) throws Throwable {
+        // Другой поток мог записать результат в кэш и завершить вызов до регистрации текущего
+        CachedResult cachedResult = getResultFromCache(state, method, key);
+        Object result = resultOf(cachedResult);
+        if (result != CachedResult.RELEASED) {
+            if (cachedResult.isFailed())
+                throw (Throwable) result;
+            return result;
+        }
+
+        RemoteKey remoteKey = remoteKeyOf(state, method, key);
+        if (remoteKey != null) {
+            result = getRemoteResult(state, method, key, remoteKey);
+            if (result != CachedResult.RELEASED)
+                return result;
+        }
+
+        long start = System.nanoTime();
         try {
-            stateLock.readLock().lock();
-
-            if (!cache.containsKey(currentState))
-                return null;
-
-            Method targetMethod = getTargetMethod(method);
-            if (!cache.get(currentState).containsKey(targetMethod))
-                return null;
-
-            CachedResult result = null;
-            Set<CachedResult> cachedList = cache.get(currentState).get(targetMethod);
-            long timestamp = System.currentTimeMillis();
-            for (CachedResult cachedResult : cachedList) {
-                if (Arrays.equals(cachedResult.getCallParameters(), args)) {
-                    result = cachedResult;
-                    result.setExpired(timestamp + methodsCacheLifetime.get(targetMethod));
-                    break;
-                }
+            result = method.invoke(target, args);
+        } catch (Exception e) {
+            if (!stateLock.validate(stamp))
+                return INCONSISTENT;
+            putFailureToCache(state, stamp, method, key, e);
+            throw e;
+        }
+        if (!stateLock.validate(stamp))
+            return INCONSISTENT;
+
+        if (method.isAsync() && result instanceof CompletableFuture<?> pending) {
+            putFutureToCache(state, stamp, method, key, pending, start);
+        } else {
+            stats[method.getSlot()].recordLoad(System.nanoTime() - start);
+            putResultToCache(state, method, key, result, ticker.read() + method.getLifetime());
+            if (remoteKey != null)
+                publishResult(remoteKey, method, result);
+        }
+        return result;
+    }
+
+    /**
+     * Помещает в кэш исключение метода на {@link Cache#failureLifetime()}, если оно задано и за время вызова
+     * не выполнялся ни один мутатор
+     */
+    private void putFailureToCache(State state, long stamp, MethodDescriptor method, ArgumentsKey key,
+                                   Exception exception) {
+        if (method.getFailureLifetime() == 0 || method.isAsync() || !stateLock.validate(stamp))
+            return;
+
+        long expired = ticker.read() + method.getFailureLifetime();
+        putEntry(state, method, key, (s, results) -> new FailedResult(exception, key, expired, s, method, results));
+    }
+
+    /**
+     * Помещает в кэш незавершённый результат асинхронного метода.
+     * До завершения future запись не устаревает, поэтому все обращения к методу получают один и тот же future.
+     * После успешного завершения время жизни записи отсчитывается от момента завершения,
+     * при завершении с исключением запись удаляется из кэша.
+     * Время загрузки в статистике метода - время до завершения future
+     */
+    private void putFutureToCache(State state, long stamp, MethodDescriptor method, ArgumentsKey key,
+                                  CompletableFuture<?> future, long start) {
+        CachedResult cachedResult = stateLock.validate(stamp)
+                ? putResultToCache(state, method, key, future, IN_FLIGHT)
+                : null;
+
+        future.whenComplete((value, error) -> {
+            stats[method.getSlot()].recordLoad(System.nanoTime() - start);
+            if (cachedResult == null)
+                return;
+
+            if (error != null) {
+                if (remove(cachedResult))
+                    prune(state);
+            } else {
+                cachedResult.setExpired(ticker.read() + method.getLifetime());
+                expiryIndex.add(cachedResult);
             }
+        });
+    }
 
-            return result;
-        } finally {
-            stateLock.readLock().unlock();
+    /**
+     * Запускает фоновое обновление результата, до устаревания которого осталось меньше {@link Cache#refreshAhead()}.
+     * Для записи выполняется не более одного обновления одновременно, метод вызывается в пуле
+     * {@link CacheConfig#getExecutor()} для состояния записи, если оно остаётся текущим
+     */
+    private void refreshAhead(MethodDescriptor method, CachedResult cachedResult) {
+        long refreshAhead = method.getRefreshAhead();
+        if (refreshAhead == 0 || method.isAsync() || cachedResult.getExpired() - ticker.read() > refreshAhead)
+            return;
+
+        long stamp = stateLock.tryOptimisticRead();
+        if (stamp == 0 || !cachedResult.getState().equals(methodStates[method.getSlot()]))
+            return;
+
+        if (!cachedResult.startRefresh())
+            return;
+
+        try {
+            config.getExecutor().execute(() -> reload(cachedResult, stamp));
+        } catch (RejectedExecutionException e) {
+            cachedResult.cancelRefresh();
         }
     }
 
     /**
-     * Подсчитывает долю устаревших записей CacheResult в кэше (expired < текущего момента)
-     *
-     * @return доля устаревших записей от 0 (нет устаревших) до 1 (все устарели)
+     * Повторно вызывает метод для аргументов и состояния записи и заменяет её запись с новым результатом.
+     * Результат записывается, только если оптимистичная метка {@code stamp} осталась действительной:
+     * иначе во время вызова выполнялся мутатор, и прежний результат остаётся в кэше до устаревания.
+     * Исключение метода также оставляет прежний результат
      */
-    public double getCacheExpireRatio() {
+    private void reload(CachedResult cachedResult, long stamp) {
+        MethodDescriptor method = cachedResult.getMethod();
+        MethodStats methodStats = stats[method.getSlot()];
         try {
-            writeToCacheLock.readLock().lock();
-            final long timestamp = System.currentTimeMillis();
-            int total = 0;
-            int expired = 0;
-
-            for (State state : cache.keySet()) {
-                for (Method method : cache.get(state).keySet()) {
-                    total += cache.get(state).get(method).size();
-
-                    for (CachedResult cachedResult : cache.get(state).get(method)) {
-                        if (cachedResult.getExpired() < timestamp)
-                            expired++;
-                    }
+            long start = System.nanoTime();
+            Object result = method.invoke(target, cachedResult.getCallParameters());
+            methodStats.recordLoad(System.nanoTime() - start);
+
+            if (stateLock.validate(stamp)) {
+                CachedResult replacement = createEntry(result, storeOffHeap(method, result), cachedResult.getKey(),
+                        ticker.read() + method.getLifetime(), cachedResult.getState(), method, cachedResult.getOwner());
+                if (cachedResult.replaceWith(replacement)) {
+                    expiryIndex.remove(cachedResult);
+                    size.decrementAndGet();
+                    weight.addAndGet(-cachedResult.getWeight());
+                    onAdded(replacement);
+                    methodStats.refreshes.increment();
+
+                    RemoteKey remoteKey = remoteKeyOf(cachedResult.getState(), method, cachedResult.getKey());
+                    if (remoteKey != null)
+                        publishResult(remoteKey, method, result);
+                    return;
                 }
+                replacement.release();
             }
+        } catch (Error e) {
+            cachedResult.cancelRefresh();
+            throw e;
+        } catch (Throwable e) {
+            // Исключение обновления не передаётся вызывающим потокам: прежний результат остаётся в кэше
+        }
+        cachedResult.cancelRefresh();
+    }
 
-            return total == 0 ? 0 : (double) expired / total;
-        } finally {
-            writeToCacheLock.readLock().unlock();
+    /**
+     * @return ключ результата в удалённом уровне или {@code null}, если уровень не используется,
+     * метод асинхронный или состояние либо аргументы не сериализуемы
+     */
+    private RemoteKey remoteKeyOf(State state, MethodDescriptor method, ArgumentsKey key) {
+        if (remoteTier == null || method.isAsync())
+            return null;
+
+        byte[] stateBlob = CacheSnapshot.serialize(state.values());
+        byte[] argsBlob = stateBlob == null ? null : CacheSnapshot.serialize(key.toArray());
+        if (argsBlob == null)
+            return null;
+        return new RemoteKey(target.getClass().getName(), stateBlob, CacheSnapshot.signature(method), argsBlob);
+    }
+
+    /**
+     * Ищет результат в удалённом уровне и помещает найденный результат в кэш с оставшимся временем жизни.
+     * Результат соответствует состоянию {@code state}, а не текущему состоянию объекта,
+     * поэтому записывается в кэш без проверки оптимистичной метки
+     *
+     * @return результат или {@link CachedResult#RELEASED}, если в удалённом уровне его нет
+     */
+    private Object getRemoteResult(State state, MethodDescriptor method, ArgumentsKey key, RemoteKey remoteKey) {
+        RemoteTier.Entry entry = remoteTier.get(remoteKey);
+        if (entry == null)
+            return CachedResult.RELEASED;
+
+        Object result;
+        try {
+            result = CacheSnapshot.deserialize(ByteBuffer.wrap(entry.result()), deserializationFilter);
+        } catch (IllegalStateException e) {
+            // Класс результата недоступен, изменился или отклонён фильтром
+            return CachedResult.RELEASED;
         }
+        putResultToCache(state, method, key, result, ticker.read() + entry.lifetime());
+        return result;
     }
 
     /**
-     * Очищает кэш от устаревших записей.
-     * Блокирует другие потоки от изменения на время очистки
+     * Записывает вычисленный результат в удалённый уровень, откуда он рассылается другим узлам.
+     * Несериализуемые результаты в удалённый уровень не попадают
      */
-    public void clearCache() {
+    private void publishResult(RemoteKey remoteKey, MethodDescriptor method, Object result) {
+        byte[] resultBlob = CacheSnapshot.serialize(result);
+        if (resultBlob != null)
+            remoteTier.put(remoteKey, new RemoteTier.Entry(resultBlob, method.getLifetime()));
+    }
+
+    /**
+     * Принимает результат, вычисленный другим узлом.
+     * Результат помещается в кэш, только если его состояние совпадает с текущим состоянием метода:
+     * результаты для других состояний остаются в удалённом уровне и берутся оттуда при переходе в эти состояния
+     */
+    private void acceptRemoteResult(RemoteKey remoteKey, RemoteTier.Entry entry) {
+        MethodDescriptor method = remoteMethods.get(remoteKey.getMethod());
+        if (method == null || !remoteKey.getTargetClass().equals(target.getClass().getName()))
+            return;
+
+        State state = methodStates[method.getSlot()];
         try {
-            writeToCacheLock.writeLock().lock();
-            final long timestamp = System.currentTimeMillis();
-
-            Iterator<State> stateIterator = cache.keySet().iterator();
-            while (stateIterator.hasNext()) {
-                State nextState = stateIterator.next();
-
-                Iterator<Method> methodIterator = cache.get(nextState).keySet().iterator();
-                while (methodIterator.hasNext()) {
-                    Method nextMethod = methodIterator.next();
-                    Set<CachedResult> cachedResults = cache.get(nextState).get(nextMethod);
-                    cachedResults.removeIf(result -> result.getExpired() < timestamp);
-                    if (cachedResults.isEmpty()) {
-                        methodIterator.remove();
-                    }
-                }
-                if (cache.get(nextState).isEmpty())
-                    stateIterator.remove();
+            Object[] values = (Object[]) CacheSnapshot.deserialize(ByteBuffer.wrap(remoteKey.getState()),
+                    deserializationFilter);
+            if (!state.equals(new State(state.schema(), state.fields(), values)))
+                return;
+
+            ArgumentsKey key = ArgumentsKey.of((Object[]) CacheSnapshot.deserialize(
+                    ByteBuffer.wrap(remoteKey.getArguments()), deserializationFilter));
+            Object result = CacheSnapshot.deserialize(ByteBuffer.wrap(entry.result()), deserializationFilter);
+            putResultToCache(state, method, key, result, ticker.read() + entry.lifetime());
+        } catch (IllegalStateException | ClassCastException e) {
+            // Класс значения недоступен, изменился или отклонён фильтром
+        }
+    }
+
+    /**
+     * Отписывает кэш от результатов, вычисленных другими узлами.
+     * Поиск результатов в удалённом уровне и запись в него вычисленных результатов продолжаются
+     */
+    public void unsubscribeRemoteTier() {
+        if (remoteTier != null)
+            remoteTier.unsubscribe(remoteListener);
+    }
+
+    /**
+     * Меняет текущее состояние кэшированного объекта после вызова метода-мутатора.
+     * Перечитываются только поля, которые изменяет мутатор, а состояние меняется только у тех методов вида CACHE,
+     * которые зависят от изменившихся полей: кэшированные результаты остальных методов остаются доступны.
+     * Если такое состояние уже встречалось, то текущим становится ранее сохранённый экземпляр
+     */
+    private void changeState(MethodDescriptor mutator) {
+        State oldState = currentState;
+        State newState = stateSchema.capture(target, oldState, mutator.getChanges());
+        if (newState == oldState || newState.equals(oldState))
+            return;
+
+        State[] projections = methodStates.clone();
+        for (MethodDescriptor cacheMethod : cacheMethods) {
+            int[] dependencies = cacheMethod.getDependencies();
+            if (newState.differs(oldState, dependencies)) {
+                State projection = newState.project(dependencies);
+                State state = states.get(projection);
+                projections[cacheMethod.getSlot()] = state == null ? projection : state;
+                stats[cacheMethod.getSlot()].stateSwitches.increment();
             }
-        } finally {
-            writeToCacheLock.writeLock().unlock();
         }
+
+        currentState = newState;
+        methodStates = projections;
+    }
+
+    /**
+     * Метод помещает результат в кэш.
+     * Запись выполняется атомарно в пределах состояния (через compute), поэтому не пересекается
+     * с удалением пустых Map при очистке кэша, а записи по разным состояниям выполняются параллельно
+     *
+     * @return добавленная запись или {@code null}, если другой поток успел записать результат раньше
+     */
+    private CachedResult putResultToCache(State state, MethodDescriptor method, ArgumentsKey key, Object result,
+                                          long expired) {
+        // Сериализация и копирование во внешнюю память выполняются до блокировки состояния в compute
+        OffHeapEntry offHeap = expired == IN_FLIGHT ? null : storeOffHeap(method, result);
+        return putEntry(state, method, key,
+                (s, results) -> createEntry(result, offHeap, key, expired, s, method, results));
     }
 
     /**
-     * Определяет, есть ли на методе аннотации, относящиеся к управлению кэшем
+     * Помещает в кэш запись, созданную {@code factory} по каноническому состоянию и Map результатов метода
      *
-     * @return {@code true} если такая аннотация установлена
+     * @return добавленная запись или {@code null}, если для аргументов уже есть запись
      */
-    private boolean isMethodAnnotated(Method method, Class<? extends Annotation> annotationClass) {
-        Method targetMethod = getTargetMethod(method);
+    private CachedResult putEntry(State state, MethodDescriptor method, ArgumentsKey key, EntryFactory factory) {
+        CachedResult[] added = new CachedResult[1];
+
+        cache.compute(state, (s, stateResults) -> {
+            if (stateResults == null)
+                stateResults = new ConcurrentHashMap<>();
+            // compute передаёт состояние вызывающего, а не ключ Map: запись создаётся с каноническим экземпляром
+            State canonical = states.putIfAbsent(s, s);
+            if (canonical == null)
+                canonical = s;
 
-        return methodsAnnotations.containsKey(targetMethod)
-                && methodsAnnotations.get(targetMethod)
-                .stream()
-                .anyMatch(a -> a.annotationType().getName().equals(annotationClass.getName()));
+            Map<ArgumentsKey, CachedResult> results = stateResults.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+            // Если другой поток успел записать тот же результат в кэш,
+            // то не нужно записывать повторно
+            CachedResult cachedResult = factory.create(canonical, results);
+            if (results.putIfAbsent(key, cachedResult) == null)
+                added[0] = cachedResult;
+            else
+                cachedResult.release();
+
+            return stateResults;
+        });
+
+        if (added[0] != null)
+            onAdded(added[0]);
+        return added[0];
+    }
+
+    private CachedResult createEntry(Object result, OffHeapEntry offHeap, ArgumentsKey key, long expired,
+                                     State state, MethodDescriptor method, Map<ArgumentsKey, CachedResult> owner) {
+        int weight = storage.weigh(key, result);
+        if (offHeap == null)
+            return new CachedResult(result, key, expired, state, method, owner, weight);
+
+        return new OffHeapResult(key, expired, state, method, owner, weight,
+                offHeapStore, offHeap.address, offHeap.length, storage.offHeapPromotion);
     }
 
     /**
-     * Заполняет Map, где каждому методу соответствует множество установленных на нём аннотаций для управления кэшем
+     * Сериализует результат и копирует его во внешнюю память, если она используется.
+     * Результат остаётся в куче, если он не сериализуем, меньше порога {@link CacheConfig#getOffHeapThreshold()}
+     * или во внешней памяти нет места
+     *
+     * @return ячейка во внешней памяти или {@code null}, если результат остаётся в куче
      */
-    private void mapMethodAnnotations(Object object) {
-        Method[] methods = object.getClass().getMethods();
-        Arrays.stream(methods)
-                .forEach(m -> {
-                            Set<Annotation> set = getAnnotationsByMethod(m, Cache.class, Mutator.class);
-                            if (!set.isEmpty()) {
-                                methodsAnnotations.put(m, set);
-                            }
-                        }
-                );
+    private OffHeapEntry storeOffHeap(MethodDescriptor method, Object result) {
+        if (offHeapStore == null || method.isAsync() || !(result instanceof Serializable)
+                || ON_HEAP_TYPES.contains(result.getClass()))
+            return null;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(result);
+        } catch (IOException e) {
+            // Объект содержит несериализуемые поля
+            return null;
+        }
+        if (bytes.size() < storage.offHeapThreshold)
+            return null;
+
+        byte[] data = bytes.toByteArray();
+        long address = offHeapStore.store(data);
+        return address == OffHeapStore.NO_ADDRESS ? null : new OffHeapEntry(address, data.length);
     }
 
     /**
-     * Возвращает Set установленных на методе аннотаций указанных типов
+     * Возвращает результат записи. Запись, результат которой недоступен, удаляется из кэша,
+     * чтобы новый результат мог быть записан на её место
+     *
+     * @return результат или {@link CachedResult#RELEASED}, если записи нет или её результат недоступен
      */
-    @SafeVarargs
-    private Set<Annotation> getAnnotationsByMethod(Method method, Class<? extends Annotation>... types) {
-        return Arrays.stream(method.getAnnotations())
-                .filter(a -> Arrays.stream(types).anyMatch(c -> c.getName().equals(a.annotationType().getName())))
-                .collect(Collectors.toSet());
+    private Object resultOf(CachedResult cachedResult) {
+        if (cachedResult == null)
+            return CachedResult.RELEASED;
+
+        Object result = cachedResult.getResult();
+        if (result == CachedResult.RELEASED)
+            remove(cachedResult);
+        return result;
     }
 
     /**
-     * Для каждого метода с установленной аннотацией Cache заполняет время жизни кэша для данного метода
+     * Получение результата из кэша для состояния {@code state}.
+     * Выполняется без блокировок
+     *
+     * @return кэшированное значение для указанного метода и списка аргументов
      */
-    private void mapMethodCacheLifetime() {
-        for (Method method : methodsAnnotations.keySet()) {
-            long lifetime = getCacheLifetime(method);
-            if (lifetime > 0) {
-                methodsCacheLifetime.put(method, lifetime);
-            }
+    private CachedResult getResultFromCache(State state, MethodDescriptor method, ArgumentsKey key) {
+        CachedResult result = null;
+        if (key == ArgumentsKey.EMPTY) {
+            result = lastResults.get(method.getSlot());
+            if (result != null && (result.isRemoved() || !isSameState(result.getState(), state)))
+                result = null;
+        }
+
+        if (result == null) {
+            result = findResult(state, method, key);
+            if (result != null && key == ArgumentsKey.EMPTY)
+                lastResults.set(method.getSlot(), result);
+        }
+
+        if (result != null) {
+            // Время жизни результата, обновляемого заранее, и исключения отсчитывается от вызова метода
+            if (method.getRefreshAhead() == 0 && !result.isFailed())
+                refreshExpired(result, method.getLifetime());
+            result.markAccessed();
+        }
+
+        return result;
+    }
+
+    private CachedResult findResult(State state, MethodDescriptor method, ArgumentsKey key) {
+        Map<MethodDescriptor, Map<ArgumentsKey, CachedResult>> stateResults = cache.get(state);
+        if (stateResults == null)
+            return null;
+
+        Map<ArgumentsKey, CachedResult> methodResults = stateResults.get(method);
+        return methodResults == null ? null : methodResults.get(key);
+    }
+
+    /**
+     * Состояние записи и текущее состояние метода обычно совпадают по ссылке (канонический экземпляр),
+     * сравнение значений выполняется, только если экземпляры разные
+     */
+    private static boolean isSameState(State entryState, State state) {
+        return entryState == state || entryState.equals(state);
+    }
+
+    /**
+     * Продлевает время жизни записи при обращении к ней.
+     * Новое значение записывается, только если оно сдвигается больше чем на 1/{@value #REFRESH_FRACTION}
+     * времени жизни: при частых обращениях к записи из разных потоков чтение не превращается в запись в общее поле.
+     * Запись переносится в корзину индекса устаревания, соответствующую новому значению
+     */
+    private void refreshExpired(CachedResult cachedResult, long lifetime) {
+        long expired = ticker.read() + lifetime;
+        if (expired - cachedResult.getExpired() > lifetime / REFRESH_FRACTION) {
+            cachedResult.setExpired(expired);
+            expiryIndex.add(cachedResult);
+        }
+    }
+
+    /**
+     * Подсчитывает долю устаревших записей CacheResult в кэше (expired < текущего момента).
+     * Количество устаревших записей оценивается по индексу устаревания без обхода кэша
+     * (см. {@link ExpiryIndex#countExpired(long)})
+     *
+     * @return доля устаревших записей от 0 (нет устаревших) до 1 (все устарели)
+     */
+    @Override
+    public double getCacheExpireRatio() {
+        long total = size.get();
+        if (total == 0)
+            return 0;
+
+        int expired = expiryIndex.countExpired(ticker.read());
+        return Math.min(1D, (double) expired / total);
+    }
+
+    /**
+     * Очищает кэш от устаревших записей.
+     * Обрабатываются только записи, время устаревания которых по индексу уже прошло.
+     * Не блокирует запись в кэш: удаление опустевших Map выполняется атомарно в пределах одного состояния
+     */
+    @Override
+    public void clearCache() {
+        Set<State> touched = new HashSet<>();
+        expiryIndex.expire(ticker.read(), cachedResult -> {
+            if (remove(cachedResult))
+                stats[cachedResult.getMethod().getSlot()].expirations.increment();
+            touched.add(cachedResult.getState());
+        });
+
+        for (State state : touched) {
+            prune(state);
         }
     }
 
     /**
-     * Возвращает время жизни кэша для данного метода
+     * Удаляет опустевшие Map состояния {@code state}, а если результатов для состояния не осталось - и само состояние
+     */
+    private void prune(State state) {
+        cache.computeIfPresent(state, (s, stateResults) -> {
+            stateResults.values().removeIf(Map::isEmpty);
+            if (!stateResults.isEmpty())
+                return stateResults;
+
+            states.remove(s);
+            return null;
+        });
+    }
+
+    /**
+     * Сохраняет результаты кэша в файл снимка вместе с их состояниями и оставшимся временем жизни
      *
-     * @return значение value аннотации Cache на методе
+     * @return количество сохранённых результатов
+     * @see CacheSnapshot
      */
-    private long getCacheLifetime(Method method) {
-        for (Annotation annotation : methodsAnnotations.get(method)) {
-            if (annotation.annotationType() == Cache.class) {
-                return ((Cache) annotation).lifetime();
+    public int saveSnapshot(Path file) throws IOException {
+        List<CachedResult> entries = new ArrayList<>();
+        for (Map<MethodDescriptor, Map<ArgumentsKey, CachedResult>> stateResults : cache.values()) {
+            for (Map<ArgumentsKey, CachedResult> results : stateResults.values()) {
+                entries.addAll(results.values());
             }
         }
-        return 0;
+        return CacheSnapshot.write(file, target.getClass(), entries, ticker.read());
     }
 
     /**
-     * Возвращает ссылку на одноименный метод из проксируемого класса
+     * Загружает результаты из файла снимка, созданного {@link #saveSnapshot(Path)} для объекта того же класса.
+     * Результаты декодируются при первом обращении к ним, время жизни отсчитывается от момента загрузки.
+     * Если задан {@link CacheConfig#getWeigher()}, результаты декодируются при загрузке для вычисления веса.
+     * Результаты, уже имеющиеся в кэше, не заменяются. Значения классов, отклонённых
+     * {@link CacheConfig#getDeserializationFilter()}, не загружаются
      *
-     * @return ссылка на метод из оригинального класса {@code target}
+     * @return количество загруженных результатов
+     */
+    public int loadSnapshot(Path file) throws IOException {
+        long now = ticker.read();
+        int loaded = 0;
+        for (CacheSnapshot.Entry entry : CacheSnapshot.read(file, target.getClass(), descriptors.values(),
+                deserializationFilter)) {
+            ArgumentsKey key = entry.key();
+            int weight;
+            try {
+                weight = storage.weigher == null
+                        ? 1
+                        : storage.weigh(key, CacheSnapshot.deserialize(entry.result(), deserializationFilter));
+            } catch (IllegalStateException e) {
+                // Класс результата недоступен, изменился или отклонён фильтром
+                continue;
+            }
+            CachedResult added = putEntry(entry.state(), entry.method(), key, (s, results) -> new MappedResult(
+                    entry.result(), deserializationFilter, key, now + entry.remaining(), s, entry.method(), results,
+                    weight));
+            if (added != null)
+                loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * @return количество записей в кэше
      */
-    private Method getTargetMethod(Method method) {
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * @return количество состояний, для которых в кэше есть результаты
+     */
+    int getStateCount() {
+        return cache.size();
+    }
+
+    /**
+     * @return количество канонических экземпляров состояний
+     */
+    int getCanonicalStateCount() {
+        return states.size();
+    }
+
+    /**
+     * @return объём внешней памяти, занятый результатами (байт)
+     */
+    @Override
+    public long getOffHeapSize() {
+        return offHeapStore == null ? 0 : offHeapStore.getUsed();
+    }
+
+    /**
+     * @return снимок статистики по каждому методу вида CACHE
+     */
+    @Override
+    public List<CacheStats> getStats() {
+        List<CacheStats> snapshot = new ArrayList<>(cacheMethods.length);
+        for (MethodDescriptor cacheMethod : cacheMethods) {
+            snapshot.add(stats[cacheMethod.getSlot()].snapshot(cacheMethod.getName()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return снимок статистики метода вида CACHE с указанным именем или {@code null}, если такого метода нет
+     */
+    public CacheStats getStats(String methodName) {
+        for (MethodDescriptor cacheMethod : cacheMethods) {
+            if (cacheMethod.getName().equals(methodName))
+                return stats[cacheMethod.getSlot()].snapshot(methodName);
+        }
+        return null;
+    }
+
+    /**
+     * Регистрирует кэш в MBeanServer платформы.
+     * Зарегистрированный кэш удерживается MBeanServer до вызова {@link #unregisterMBean()}
+     */
+    public synchronized void registerMBean() {
+        if (objectName != null)
+            return;
+
         try {
-            return target.getClass().getMethod(method.getName(), method.getParameterTypes());
-        } catch (NoSuchMethodException e) {
-            return null;
+            ObjectName name = new ObjectName("task3:type=MyCache,target=" + target.getClass().getSimpleName()
+                    + ",id=" + Integer.toHexString(System.identityHashCode(this)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Учитывает добавленную запись и вытесняет записи при превышении ограничений размера кэша
+     */
+    private void onAdded(CachedResult cachedResult) {
+        size.incrementAndGet();
+        weight.addAndGet(cachedResult.getWeight());
+        // Запись с незавершённым результатом попадает в индекс устаревания после завершения
+        if (cachedResult.getExpired() != IN_FLIGHT)
+            expiryIndex.add(cachedResult);
+
+        if (!storage.isBounded())
+            return;
+
+        evictionQueue.add(cachedResult);
+        // Удалённые другим способом записи остаются в очереди до прохода по ним,
+        // поэтому при значительном отставании размера очереди от размера кэша очередь чистится
+        if (evictionQueueSize.incrementAndGet() > 2 * size.get() + 64) {
+            evictionQueue.removeIf(CachedResult::isRemoved);
+            evictionQueueSize.set(evictionQueue.size());
+        }
+        evict();
+    }
+
+    /**
+     * Вытесняет записи, пока кэш превышает ограничения.
+     * Записи просматриваются в порядке очереди; запись, к которой обращались после предыдущего просмотра,
+     * возвращается в конец очереди (второй шанс), остальные удаляются.
+     * Число просмотров ограничено, чтобы частые обращения к записям не зациклили вытеснение
+     */
+    private void evict() {
+        long attempts = 2 * evictionQueueSize.get() + 1;
+        while (storage.isOverflowed() && attempts-- > 0) {
+            CachedResult cachedResult = evictionQueue.poll();
+            if (cachedResult == null)
+                return;
+
+            if (cachedResult.isRemoved()) {
+                evictionQueueSize.decrementAndGet();
+            } else if (cachedResult.resetAccessed()) {
+                evictionQueue.add(cachedResult);
+            } else {
+                evictionQueueSize.decrementAndGet();
+                if (remove(cachedResult)) {
+                    stats[cachedResult.getMethod().getSlot()].evictions.increment();
+                    // Вытеснение последней записи состояния не должно оставлять его пустые Map
+                    prune(cachedResult.getState());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} если запись была удалена этим вызовом
+     */
+    private boolean remove(CachedResult cachedResult) {
+        if (!cachedResult.remove())
+            return false;
+        expiryIndex.remove(cachedResult);
+
+        // Удалённая запись не должна удерживаться ссылкой на последний результат метода
+        if (cachedResult.getKey() == ArgumentsKey.EMPTY)
+            lastResults.compareAndSet(cachedResult.getMethod().getSlot(), cachedResult, null);
+
+        size.decrementAndGet();
+        weight.addAndGet(-cachedResult.getWeight());
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface EntryFactory {
+        CachedResult create(State state, Map<ArgumentsKey, CachedResult> owner);
+    }
+
+    /**
+     * Ячейка внешней памяти с сериализованным результатом
+     */
+    private record OffHeapEntry(long address, int length) {
+    }
+
+    /**
+     * Ключ выполняющегося вызова метода: состояние, метод и аргументы
+     */
+    static final class LoadKey {
+        private final State state;
+        private final MethodDescriptor method;
+        private final ArgumentsKey key;
+
+        private LoadKey(State state, MethodDescriptor method, ArgumentsKey key) {
+            this.state = state;
+            this.method = method;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) return true;
+            if (object == null || getClass() != object.getClass()) return false;
+
+            LoadKey loadKey = (LoadKey) object;
+            return method == loadKey.method && key.equals(loadKey.key) && state.equals(loadKey.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(state, method, key);
         }
     }
 }
@@ -3,12 +3,19 @@ package task3;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Класс для очистки кэша объектов MyCache
@@ -20,53 +27,160 @@ import java.util.List;
  * заданный порог, то чистка кэша не будет запускаться и влиять на процесс записи/чтения из него.
  * {@code cacheExpireThreshold} задаёт пороговое значение для очистки от 0 до 1 (1 = все записи в кэше устарели)
  * {@code cacheCleanInterval} задаёт интервал очистки кэша (мс)
+ * <p>
+ * Очистка может выполняться вручную методом {@link #clean()} или по расписанию после вызова {@link #start()}.
+ * По расписанию каждый кэш очищается отдельной задачей в пуле потоков очистки, первый запуск задачи сдвигается
+ * на случайную величину в пределах интервала, чтобы очистка множества кэшей не выполнялась одновременно.
+ * Зарегистрированные объекты хранятся по слабым ссылкам и не препятствуют сборке мусора:
+ * задачи очистки удалённых объектов отменяются. Повторная регистрация того же кэша игнорируется
  *
  * @see MyCache#getCacheExpireRatio()
  * @see MyCache#clearCache()
  */
-public final class MyCacheCleaner {
+public final class MyCacheCleaner implements AutoCloseable {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
     // Пороговое значение доли устаревших записей (от 0 до 1) в кэше для запуска очистки
     private final double cacheExpireThreshold;
 
-    // Интервал очистки кэша в мс
+    // Интервал очистки кэша в мс. Изменение интервала применяется к кэшам, зарегистрированным после изменения
     @Setter
     @Getter
-    private long cacheCleanInterval;
+    private volatile long cacheCleanInterval;
+
+    // Регистрации по обработчику MyCache: ключ сравнивается по ссылке (MyCache не переопределяет equals)
+    // и не удерживает кэш от сборки мусора
+    private final Map<MyCache, Registration> registrations = Collections.synchronizedMap(new WeakHashMap<>());
 
-    private final List<Object> objects = new ArrayList<>();
+    private final int threads;
+    // Изменяется и используется для планирования под монитором объекта
+    private ScheduledExecutorService scheduler;
 
     public MyCacheCleaner(long cacheCleanInterval) {
         this(cacheCleanInterval, 0.3D);
     }
 
     public MyCacheCleaner(long cacheCleanInterval, double cacheExpireThreshold) {
+        this(cacheCleanInterval, cacheExpireThreshold, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MyCacheCleaner(long cacheCleanInterval, double cacheExpireThreshold, int threads) {
         this.cacheCleanInterval = cacheCleanInterval;
         this.cacheExpireThreshold = cacheExpireThreshold;
+        this.threads = threads;
     }
 
+    /**
+     * Регистрирует объект для очистки. Объекты, не являющиеся прокси с обработчиком MyCache
+     * или асинхронным фасадом {@link Utils#cacheAsync}, игнорируются
+     */
     public void add(Object object) {
-        objects.add(object);
+        MyCache cache = Utils.cacheOf(object);
+        if (cache != null) {
+            Registration registration = registrations.computeIfAbsent(cache, Registration::new);
+
+            // Под тем же монитором, что start() и close(): планировщик не может быть остановлен до планирования задачи.
+            // Уже запланированная регистрация повторно не планируется
+            synchronized (this) {
+                if (scheduler != null)
+                    schedule(scheduler, registration);
+            }
+        }
     }
 
+    /**
+     * Однократно очищает все зарегистрированные кэши в текущем потоке
+     */
     public void clean() {
-        for (Object object : objects) {
-            if (Proxy.isProxyClass(object.getClass())) {
-                InvocationHandler handler = Proxy.getInvocationHandler(object);
-                if (handler instanceof MyCache) {
-                    try {
-                        Method method = handler.getClass().getMethod("getCacheExpireRatio");
-                        double ratio = (double) method.invoke(handler);
-
-                        if (ratio > cacheExpireThreshold) {
-                            Method cleanMethod = handler.getClass().getMethod("clearCache");
-                            cleanMethod.invoke(handler);
-                        }
-                    } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-            }
+        for (Registration registration : registrations()) {
+            clean(registration);
+        }
+    }
+
+    /**
+     * Запускает очистку зарегистрированных кэшей по расписанию
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+
+        scheduler = Executors.newScheduledThreadPool(threads, new CleanerThreadFactory());
+        // Кэш, регистрируемый параллельно, может быть запланирован и здесь, и в add(): повторное планирование пропускается
+        for (Registration registration : registrations()) {
+            schedule(scheduler, registration);
+        }
+    }
+
+    /**
+     * Останавливает очистку по расписанию
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null)
+            return;
+
+        scheduler.shutdownNow();
+        scheduler = null;
+        for (Registration registration : registrations()) {
+            registration.task = null;
+        }
+    }
+
+    /**
+     * Количество зарегистрированных кэшей
+     */
+    int size() {
+        return registrations.size();
+    }
+
+    // Копия регистраций: обход синхронизированной Map требует её блокировки на всё время обхода
+    private List<Registration> registrations() {
+        synchronized (registrations) {
+            return new ArrayList<>(registrations.values());
+        }
+    }
+
+    private void schedule(ScheduledExecutorService executor, Registration registration) {
+        synchronized (registration) {
+            if (registration.task != null)
+                return;
+
+            long interval = cacheCleanInterval;
+            long jitter = ThreadLocalRandom.current().nextLong(interval + 1);
+            registration.task = executor.scheduleWithFixedDelay(
+                    () -> clean(registration), jitter, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void clean(Registration registration) {
+        MyCache cache = registration.cache.get();
+        if (cache == null) {
+            // Запись собранного кэша удаляется из WeakHashMap при следующем обращении к ней
+            ScheduledFuture<?> task = registration.task;
+            if (task != null)
+                task.cancel(false);
+            return;
+        }
+
+        if (cache.getCacheExpireRatio() > cacheExpireThreshold)
+            cache.clearCache();
+    }
+
+    private static final class Registration {
+        private final WeakReference<MyCache> cache;
+        private volatile ScheduledFuture<?> task;
+
+        private Registration(MyCache cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+    }
 
+    private static final class CleanerThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "my-cache-cleaner-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
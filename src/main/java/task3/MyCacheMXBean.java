@@ -0,0 +1,19 @@
+package task3;
+
+import java.util.List;
+
+/**
+ * Интерфейс мониторинга кэша {@link MyCache} через JMX
+ */
+public interface MyCacheMXBean {
+    long getSize();
+
+    // Объём внешней памяти, занятый результатами (байт)
+    long getOffHeapSize();
+
+    double getCacheExpireRatio();
+
+    List<CacheStats> getStats();
+
+    void clearCache();
+}
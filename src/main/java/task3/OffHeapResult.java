@@ -0,0 +1,101 @@
+package task3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Map;
+
+/**
+ * Запись кэша, результат которой сериализован и хранится во внешней памяти {@link OffHeapStore}.
+ * В куче запись хранит только адрес и длину данных, результат десериализуется при каждом обращении,
+ * поэтому возвращается копия исходного объекта.
+ * После {@code promotionThreshold} обращений результат переносится в кучу, а ячейка освобождается.
+ * Чтение и освобождение ячейки синхронизированы на записи: ячейка не может быть переиспользована во время чтения
+ */
+final class OffHeapResult extends CachedResult {
+    private final OffHeapStore store;
+    private final int length;
+    private final int promotionThreshold;
+    // Адрес ячейки, NO_ADDRESS после её освобождения
+    private long address;
+    private int reads;
+    // Результат, перенесённый в кучу
+    private volatile Object promoted;
+    private volatile boolean isPromoted;
+
+    OffHeapResult(ArgumentsKey key, long expired, State state, MethodDescriptor method,
+                  Map<ArgumentsKey, CachedResult> owner, int weight,
+                  OffHeapStore store, long address, int length, int promotionThreshold) {
+        super(null, key, expired, state, method, owner, weight);
+        this.store = store;
+        this.address = address;
+        this.length = length;
+        this.promotionThreshold = promotionThreshold;
+    }
+
+    @Override
+    public Object getResult() {
+        if (isPromoted)
+            return promoted;
+
+        byte[] data;
+        boolean promote;
+        synchronized (this) {
+            if (isPromoted)
+                return promoted;
+            if (address == OffHeapStore.NO_ADDRESS)
+                return RELEASED;
+
+            data = store.read(address, length);
+            promote = promotionThreshold > 0 && ++reads >= promotionThreshold;
+        }
+
+        Object result = deserialize(data);
+        if (promote)
+            promote(result);
+        return result;
+    }
+
+    /**
+     * Данные ячейки копируются без десериализации: сохранение снимка не считается обращением к результату
+     * и не переносит его в кучу
+     */
+    @Override
+    byte[] serializeResult() {
+        synchronized (this) {
+            if (!isPromoted)
+                return address == OffHeapStore.NO_ADDRESS ? null : store.read(address, length);
+        }
+        return CacheSnapshot.serialize(promoted);
+    }
+
+    boolean isPromoted() {
+        return isPromoted;
+    }
+
+    @Override
+    synchronized void release() {
+        if (address == OffHeapStore.NO_ADDRESS)
+            return;
+
+        store.free(address, length);
+        address = OffHeapStore.NO_ADDRESS;
+    }
+
+    private synchronized void promote(Object result) {
+        if (isPromoted || address == OffHeapStore.NO_ADDRESS)
+            return;
+
+        promoted = result;
+        isPromoted = true;
+        release();
+    }
+
+    private static Object deserialize(byte[] data) {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return input.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
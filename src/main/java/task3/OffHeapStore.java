@@ -0,0 +1,148 @@
+package task3;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище сериализованных результатов во внешней памяти (direct ByteBuffer).
+ * Память выделяется блоками (slab) одного размера, каждый блок при первом использовании закрепляется
+ * за одним классом размера и делится на ячейки этого размера (степени двойки от {@value #MIN_CHUNK} байт).
+ * Освобождённые ячейки переиспользуются в пределах своего класса размера.
+ * Адрес ячейки - число {@code (номер блока << 32) | смещение}, в куче хранится только он и длина данных.
+ * Если ячейку выделить нельзя (данные больше блока или исчерпан объём хранилища), возвращается -1.
+ * Блок остаётся закреплённым за классом размера и после освобождения всех его ячеек
+ */
+final class OffHeapStore {
+    static final long NO_ADDRESS = -1;
+
+    private static final int MIN_CHUNK = 64;
+    private static final int MAX_SLAB_SIZE = 1 << 20;
+    // Минимальное количество блоков: блоки закрепляются за классами размера, и хранилище из одного блока
+    // могло бы хранить данные только одного класса размера
+    private static final int MIN_SLABS = 16;
+
+    private final int slabSize;
+    private final ByteBuffer[] slabs;
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+    private final SizeClass[] sizeClasses;
+    // Объём занятых ячеек в байтах
+    private final AtomicLong used = new AtomicLong();
+
+    OffHeapStore(long capacity) {
+        this.slabSize = (int) Math.max(MIN_CHUNK, Math.min(MAX_SLAB_SIZE, Long.highestOneBit(capacity / MIN_SLABS)));
+        this.slabs = new ByteBuffer[(int) Math.max(1, capacity / slabSize)];
+
+        int classes = Integer.numberOfTrailingZeros(slabSize) - Integer.numberOfTrailingZeros(MIN_CHUNK) + 1;
+        this.sizeClasses = new SizeClass[classes];
+        for (int i = 0; i < classes; i++) {
+            sizeClasses[i] = new SizeClass(MIN_CHUNK << i);
+        }
+    }
+
+    /**
+     * Копирует данные в свободную ячейку
+     *
+     * @return адрес ячейки или {@link #NO_ADDRESS}, если места нет
+     */
+    long store(byte[] data) {
+        SizeClass sizeClass = sizeClassOf(data.length);
+        if (sizeClass == null)
+            return NO_ADDRESS;
+
+        long address = sizeClass.allocate();
+        if (address == NO_ADDRESS)
+            return NO_ADDRESS;
+
+        slab(address).put(offset(address), data);
+        used.addAndGet(sizeClass.chunkSize);
+        return address;
+    }
+
+    byte[] read(long address, int length) {
+        byte[] data = new byte[length];
+        slab(address).get(offset(address), data);
+        return data;
+    }
+
+    /**
+     * Возвращает ячейку с данными длины {@code length} в свободные ячейки её класса размера.
+     * Вызывающая сторона гарантирует, что ячейка больше не читается
+     */
+    void free(long address, int length) {
+        SizeClass sizeClass = sizeClassOf(length);
+        sizeClass.release(address);
+        used.addAndGet(-sizeClass.chunkSize);
+    }
+
+    long getUsed() {
+        return used.get();
+    }
+
+    private SizeClass sizeClassOf(int length) {
+        if (length > slabSize)
+            return null;
+
+        int chunk = Math.max(MIN_CHUNK, Integer.highestOneBit(Math.max(1, length - 1)) << 1);
+        return sizeClasses[Integer.numberOfTrailingZeros(chunk) - Integer.numberOfTrailingZeros(MIN_CHUNK)];
+    }
+
+    private ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * @return номер нового блока или -1, если объём хранилища исчерпан
+     */
+    private int allocateSlab() {
+        int slab = allocatedSlabs.getAndIncrement();
+        if (slab >= slabs.length) {
+            allocatedSlabs.decrementAndGet();
+            return -1;
+        }
+        slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        return slab;
+    }
+
+    private final class SizeClass {
+        private final int chunkSize;
+        // Стек освобождённых ячеек
+        private long[] free = new long[16];
+        private int freeCount;
+        // Блок, из которого выделяются новые ячейки, и смещение первой невыделенной ячейки
+        private int slab = -1;
+        private int next;
+
+        private SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        private synchronized long allocate() {
+            if (freeCount > 0)
+                return free[--freeCount];
+
+            if (slab < 0 || next + chunkSize > slabSize) {
+                int allocated = allocateSlab();
+                if (allocated < 0)
+                    return NO_ADDRESS;
+                slab = allocated;
+                next = 0;
+            }
+
+            long address = ((long) slab << 32) | next;
+            next += chunkSize;
+            return address;
+        }
+
+        private synchronized void release(long address) {
+            if (freeCount == free.length)
+                free = Arrays.copyOf(free, freeCount * 2);
+            free[freeCount++] = address;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package task3;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Ключ результата в удалённом уровне кэша {@link RemoteTier}: имя класса объекта, сериализованные значения полей
+ * состояния, сигнатура метода и сериализованные аргументы.
+ * Ключ не зависит от экземпляров классов процесса, поэтому одинаков на всех узлах.
+ * Массивы не копируются: ни кэш, ни уровень не должны изменять их после создания ключа
+ */
+public final class RemoteKey {
+    private final String targetClass;
+    private final byte[] state;
+    private final String method;
+    private final byte[] arguments;
+    private final int hash;
+
+    public RemoteKey(String targetClass, byte[] state, String method, byte[] arguments) {
+        this.targetClass = targetClass;
+        this.state = state;
+        this.method = method;
+        this.arguments = arguments;
+        this.hash = Objects.hash(targetClass, method, Arrays.hashCode(state), Arrays.hashCode(arguments));
+    }
+
+    public String getTargetClass() {
+        return targetClass;
+    }
+
+    public byte[] getState() {
+        return state;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public byte[] getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) return true;
+        if (object == null || getClass() != object.getClass()) return false;
+
+        RemoteKey remoteKey = (RemoteKey) object;
+        return hash == remoteKey.hash && targetClass.equals(remoteKey.targetClass) && method.equals(remoteKey.method)
+                && Arrays.equals(state, remoteKey.state) && Arrays.equals(arguments, remoteKey.arguments);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return targetClass + "." + method;
+    }
+}
@@ -0,0 +1,43 @@
+package task3;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Удалённый (второй) уровень кэша, общий для нескольких узлов ({@link CacheConfig#getRemoteTier()}).
+ * Первым уровнем остаётся кэш {@link MyCache} в процессе: при промахе результат ищется в удалённом уровне,
+ * и только если его нет и там, вызывается метод. Вычисленный результат записывается в удалённый уровень
+ * и рассылается подписчикам других узлов, чтобы они могли заполнить свой первый уровень.
+ * <p>
+ * Реализация представляет подключение одного узла. Ошибки связи не должны передаваться вызывающей стороне:
+ * недоступный уровень возвращает {@code null} и не рассылает результаты.
+ * Подписчик удерживается кэшем, а реализация должна хранить на него слабую ссылку:
+ * у прокси нет явного закрытия, и уровень не должен удерживать от сборки недоступные прокси.
+ * Явная отписка выполняется {@link MyCache#unsubscribeRemoteTier()}
+ */
+public interface RemoteTier {
+    /**
+     * Сериализованный результат и оставшееся время его жизни (мс)
+     */
+    record Entry(byte[] result, long lifetime) {
+    }
+
+    /**
+     * @return результат или {@code null}, если его нет или время его жизни истекло
+     */
+    Entry get(RemoteKey key);
+
+    /**
+     * Записывает результат и рассылает его подписчикам других узлов
+     */
+    void put(RemoteKey key, Entry entry);
+
+    /**
+     * Подписывает на результаты, вычисленные другими узлами
+     */
+    void subscribe(BiConsumer<RemoteKey, Entry> listener);
+
+    /**
+     * Отменяет подписку {@code listener}. Отписка неподписанного слушателя ничего не делает
+     */
+    void unsubscribe(BiConsumer<RemoteKey, Entry> listener);
+}
@@ -1,45 +1,151 @@
 package task3;
 
-import java.lang.reflect.Field;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Objects;
 
 /**
- * Теоретически можно переделать в интерфейс с методом наподобие getState для большей гибкости
- * при работе с кэшируемыми объектами разных классов
+ * Снимок значений полей кэшируемого объекта.
+ * Описание полей хранится один раз в {@link StateSchema} класса объекта, а снимок содержит только значения
+ * в порядке индексов полей {@code fields}: значения примитивных полей упакованы в массив long без создания обёрток,
+ * значения ссылочных полей хранятся в массиве Object. Хэш-код вычисляется один раз при создании снимка.
+ * Снимок может содержать как все поля объекта, так и их часть (проекцию), от которой зависит результат метода.
+ * Снимки создаются через {@link StateSchema#capture(Object)}
  */
 public class State {
-    private final Map<Field, Object> values = new HashMap<>();
-
-    public State(Object object) {
-        saveState(object);
-    }
-
-    private void saveState(Object object) {
-        if (object == null)
-            return;
-
-        Class<?> objClass = object.getClass();
-
-        while (objClass != null) {
-            Arrays.stream(objClass.getDeclaredFields())
-                    .forEach(field -> {
-                        field.setAccessible(true);
-                        Object value;
-                        try {
-                            value = field.get(object);
-                        } catch (IllegalAccessException e) {
-                            throw new RuntimeException(e);
-                        }
-                        add(field, value);
-                    });
-            objClass = objClass.getSuperclass();
+    private static final long[] NO_PRIMITIVES = new long[0];
+    private static final Object[] NO_REFERENCES = new Object[0];
+
+    private final StateSchema schema;
+    private final int[] fields;
+    private final long[] primitives;
+    private final Object[] references;
+    private final int hash;
+
+    /**
+     * Создаёт снимок по значениям полей {@code fields}, примитивные значения передаются в обёртках
+     *
+     * @throws ClassCastException если значение не соответствует типу поля
+     */
+    State(StateSchema schema, int[] fields, Object[] values) {
+        this(schema, fields, primitivesOf(schema, fields, values), referencesOf(schema, fields, values));
+    }
+
+    /**
+     * Создаёт снимок из упакованных примитивных и ссылочных значений. Массивы не копируются
+     */
+    State(StateSchema schema, int[] fields, long[] primitives, Object[] references) {
+        this.schema = schema;
+        this.fields = fields;
+        this.primitives = primitives.length == 0 ? NO_PRIMITIVES : primitives;
+        this.references = references.length == 0 ? NO_REFERENCES : references;
+        this.hash = hash(schema, fields, this.primitives, this.references);
+    }
+
+    private static long[] primitivesOf(StateSchema schema, int[] fields, Object[] values) {
+        long[] primitives = new long[schema.countPrimitives(fields)];
+        int p = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (schema.isPrimitive(fields[i]))
+                primitives[p++] = schema.pack(fields[i], values[i]);
+        }
+        return primitives;
+    }
+
+    private static Object[] referencesOf(StateSchema schema, int[] fields, Object[] values) {
+        Object[] references = new Object[fields.length - schema.countPrimitives(fields)];
+        int r = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (!schema.isPrimitive(fields[i]))
+                references[r++] = values[i];
+        }
+        return references;
+    }
+
+    private static int hash(StateSchema schema, int[] fields, long[] primitives, Object[] references) {
+        int hash = 31 * System.identityHashCode(schema) + Arrays.hashCode(fields);
+        hash = 31 * hash + Arrays.hashCode(primitives);
+        return 31 * hash + Arrays.hashCode(references);
+    }
+
+    /**
+     * @return значения полей в порядке {@link #fields()}, примитивные значения в обёртках
+     */
+    Object[] values() {
+        Object[] values = new Object[fields.length];
+        int p = 0;
+        int r = 0;
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = schema.isPrimitive(fields[i])
+                    ? schema.unpack(fields[i], primitives[p++])
+                    : references[r++];
+        }
+        return values;
+    }
+
+    StateSchema schema() {
+        return schema;
+    }
+
+    /**
+     * @return индексы полей, входящих в снимок
+     */
+    int[] fields() {
+        return fields;
+    }
+
+    /**
+     * Упакованное значение примитивного поля полного снимка
+     */
+    long primitive(int index) {
+        return primitives[schema.slot(index)];
+    }
+
+    /**
+     * Значение ссылочного поля полного снимка
+     */
+    Object reference(int index) {
+        return references[~schema.slot(index)];
+    }
+
+    long[] primitives() {
+        return primitives;
+    }
+
+    Object[] references() {
+        return references;
+    }
+
+    /**
+     * Возвращает проекцию полного снимка на поля с индексами {@code projection}
+     */
+    State project(int[] projection) {
+        if (schema.isAllFields(projection))
+            return this;
+
+        long[] projectedPrimitives = new long[schema.countPrimitives(projection)];
+        Object[] projectedReferences = new Object[projection.length - projectedPrimitives.length];
+        int p = 0;
+        int r = 0;
+        for (int index : projection) {
+            if (schema.isPrimitive(index))
+                projectedPrimitives[p++] = primitive(index);
+            else
+                projectedReferences[r++] = reference(index);
         }
+        return new State(schema, projection, projectedPrimitives, projectedReferences);
     }
 
-    private void add(Field field, Object value) {
-        values.put(field, value);
+    /**
+     * Проверяет, отличается ли значение хотя бы одного из полей {@code projection} в двух полных снимках
+     */
+    boolean differs(State other, int[] projection) {
+        for (int index : projection) {
+            int slot = schema.slot(index);
+            if (slot >= 0 ? primitives[slot] != other.primitives[slot]
+                    : !Objects.equals(references[~slot], other.references[~slot]))
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -48,18 +154,27 @@ public class State {
         if (object == null || getClass() != object.getClass()) return false;
 
         State state = (State) object;
-        return values.equals(state.values);
+        return hash == state.hash
+                && schema == state.schema
+                && Arrays.equals(fields, state.fields)
+                && Arrays.equals(primitives, state.primitives)
+                && Arrays.equals(references, state.references);
     }
 
     @Override
     public int hashCode() {
-        return values.hashCode();
+        return hash;
     }
 
     @Override
     public String toString() {
-        return "State{" +
-                "values=" + values +
-                '}';
+        Object[] values = values();
+        StringBuilder builder = new StringBuilder("State{values={");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(schema.getField(fields[i]).getName()).append('=').append(values[i]);
+        }
+        return builder.append("}}").toString();
     }
 }
@@ -0,0 +1,15 @@
+package task3;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Поле, отмеченное аннотацией, не входит в состояние объекта {@link State}:
+ * его изменение не приводит к смене состояния и не влияет на поиск результатов в кэше
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface StateIgnore {
+}
@@ -0,0 +1,295 @@
+package task3;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * План снятия состояния для объектов одного класса.
+ * Строится один раз для класса: список полей (включая поля суперклассов) и обработчики чтения их значений,
+ * полученные из {@link VarHandle}. Статические поля и поля с аннотацией {@link StateIgnore} в состояние не входят.
+ * Поля адресуются по индексу; набор индексов задаёт проекцию состояния на часть полей.
+ * Значения примитивных полей читаются без создания обёрток и упаковываются в long
+ * (float и double - в виде битового представления), поэтому в полном снимке {@link State} у каждого поля
+ * есть позиция в массиве примитивных или ссылочных значений
+ */
+public final class StateSchema {
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType PRIMITIVE_GETTER_TYPE = MethodType.methodType(long.class, Object.class);
+    private static final MethodHandle FLOAT_BITS;
+    private static final MethodHandle DOUBLE_BITS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            FLOAT_BITS = lookup.findStatic(Float.class, "floatToIntBits", MethodType.methodType(int.class, float.class));
+            DOUBLE_BITS = lookup.findStatic(Double.class, "doubleToLongBits", MethodType.methodType(long.class, double.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final ClassValue<StateSchema> SCHEMAS = new ClassValue<>() {
+        @Override
+        protected StateSchema computeValue(Class<?> type) {
+            return new StateSchema(type);
+        }
+    };
+
+    @Getter
+    private final Class<?> type;
+    private final Field[] fields;
+    // Обработчики чтения: (Object) -> long для примитивных полей, (Object) -> Object для ссылочных
+    private final MethodHandle[] getters;
+    // Позиция значения поля в полном снимке: номер в массиве примитивных значений или ~номер в массиве ссылочных
+    private final int[] slots;
+    private final int primitiveCount;
+    // Проекция на все поля объекта
+    private final int[] allFields;
+
+    private StateSchema(Class<?> type) {
+        this.type = type;
+
+        List<Field> stateFields = new ArrayList<>();
+        List<MethodHandle> stateGetters = new ArrayList<>();
+        for (Class<?> objClass = type; objClass != null; objClass = objClass.getSuperclass()) {
+            for (Field field : objClass.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.isAnnotationPresent(StateIgnore.class))
+                    continue;
+
+                stateFields.add(field);
+                stateGetters.add(createGetter(field));
+            }
+        }
+
+        this.fields = stateFields.toArray(new Field[0]);
+        this.getters = stateGetters.toArray(new MethodHandle[0]);
+        this.allFields = IntStream.range(0, fields.length).toArray();
+
+        this.slots = new int[fields.length];
+        int primitives = 0;
+        int references = 0;
+        for (int i = 0; i < fields.length; i++) {
+            slots[i] = fields[i].getType().isPrimitive() ? primitives++ : ~references++;
+        }
+        this.primitiveCount = primitives;
+    }
+
+    public static StateSchema forClass(Class<?> type) {
+        return SCHEMAS.get(type);
+    }
+
+    /**
+     * Создаёт обработчик чтения значения поля с сигнатурой (Object) -> Object,
+     * а для примитивного поля - (Object) -> long с упакованным значением
+     */
+    private static MethodHandle createGetter(Field field) {
+        try {
+            VarHandle handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                    .unreflectVarHandle(field);
+            MethodHandle getter = handle.toMethodHandle(VarHandle.AccessMode.GET);
+            if (!field.getType().isPrimitive())
+                return getter.asType(GETTER_TYPE);
+
+            if (field.getType() == float.class)
+                getter = MethodHandles.filterReturnValue(getter, FLOAT_BITS);
+            else if (field.getType() == double.class)
+                getter = MethodHandles.filterReturnValue(getter, DOUBLE_BITS);
+            // boolean приводится к 0 или 1, остальные типы расширяются до long
+            return MethodHandles.explicitCastArguments(getter, PRIMITIVE_GETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Снимает текущие значения всех полей объекта
+     */
+    public State capture(Object object) {
+        long[] primitives = new long[primitiveCount];
+        Object[] references = new Object[fields.length - primitiveCount];
+        for (int i = 0; i < getters.length; i++) {
+            int slot = slots[i];
+            if (slot >= 0)
+                primitives[slot] = readPrimitive(object, i);
+            else
+                references[~slot] = read(object, i);
+        }
+        return new State(this, allFields, primitives, references);
+    }
+
+    /**
+     * Снимает значения полей объекта, перечитывая только поля {@code changes}.
+     * Значения остальных полей берутся из предыдущего полного снимка {@code previous}
+     */
+    public State capture(Object object, State previous, int[] changes) {
+        if (changes == allFields)
+            return capture(object);
+
+        long[] primitives = previous.primitives();
+        Object[] references = previous.references();
+        boolean primitivesChanged = false;
+        boolean referencesChanged = false;
+        for (int index : changes) {
+            int slot = slots[index];
+            if (slot >= 0) {
+                long value = readPrimitive(object, index);
+                if (value != primitives[slot]) {
+                    if (!primitivesChanged) {
+                        primitives = primitives.clone();
+                        primitivesChanged = true;
+                    }
+                    primitives[slot] = value;
+                }
+            } else {
+                Object value = read(object, index);
+                if (!Objects.equals(value, references[~slot])) {
+                    if (!referencesChanged) {
+                        references = references.clone();
+                        referencesChanged = true;
+                    }
+                    references[~slot] = value;
+                }
+            }
+        }
+        return primitivesChanged || referencesChanged
+                ? new State(this, allFields, primitives, references)
+                : previous;
+    }
+
+    private Object read(Object object, int index) {
+        try {
+            return (Object) getters[index].invokeExact(object);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long readPrimitive(Object object, int index) {
+        try {
+            return (long) getters[index].invokeExact(object);
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean isPrimitive(int index) {
+        return slots[index] >= 0;
+    }
+
+    /**
+     * @return позиция значения поля в полном снимке: номер примитивного значения или ~номер ссылочного
+     */
+    int slot(int index) {
+        return slots[index];
+    }
+
+    /**
+     * @return количество примитивных полей среди полей {@code indexes}
+     */
+    int countPrimitives(int[] indexes) {
+        if (indexes == allFields)
+            return primitiveCount;
+
+        int count = 0;
+        for (int index : indexes) {
+            if (slots[index] >= 0)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Упаковывает значение примитивного поля в обёртке в long так же, как при чтении поля
+     *
+     * @throws ClassCastException если значение не соответствует типу поля
+     */
+    long pack(int index, Object value) {
+        Class<?> type = fields[index].getType();
+        if (type == boolean.class)
+            return (Boolean) value ? 1 : 0;
+        if (type == char.class)
+            return (Character) value;
+        if (type == float.class)
+            return Float.floatToIntBits((Float) value);
+        if (type == double.class)
+            return Double.doubleToLongBits((Double) value);
+        if (type == long.class)
+            return (Long) value;
+        if (type == int.class)
+            return (Integer) value;
+        if (type == short.class)
+            return (Short) value;
+        return (Byte) value;
+    }
+
+    /**
+     * Возвращает значение примитивного поля в обёртке по упакованному значению
+     */
+    Object unpack(int index, long value) {
+        Class<?> type = fields[index].getType();
+        if (type == boolean.class)
+            return value != 0;
+        if (type == char.class)
+            return (char) value;
+        if (type == float.class)
+            return Float.intBitsToFloat((int) value);
+        if (type == double.class)
+            return Double.longBitsToDouble(value);
+        if (type == long.class)
+            return value;
+        if (type == int.class)
+            return (int) value;
+        if (type == short.class)
+            return (short) value;
+        return (byte) value;
+    }
+
+    /**
+     * Возвращает индексы полей с указанными именами.
+     * Для пустого списка возвращается проекция на все поля
+     *
+     * @throws IllegalArgumentException если поле не входит в состояние объекта
+     */
+    public int[] indexesOf(String... names) {
+        if (names.length == 0)
+            return allFields;
+
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = indexOf(names[i]);
+        }
+        Arrays.sort(indexes);
+        return indexes;
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].getName().equals(name))
+                return i;
+        }
+        throw new IllegalArgumentException("Field " + name + " is not a part of " + type.getName() + " state");
+    }
+
+    public boolean isAllFields(int[] indexes) {
+        return indexes == allFields;
+    }
+
+    public int size() {
+        return fields.length;
+    }
+
+    public Field getField(int index) {
+        return fields[index];
+    }
+}
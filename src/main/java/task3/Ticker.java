@@ -0,0 +1,19 @@
+package task3;
+
+/**
+ * Источник текущего времени (мс) для вычисления времени жизни записей в кэше
+ */
+@FunctionalInterface
+public interface Ticker {
+    // Системное время, System.currentTimeMillis()
+    Ticker SYSTEM = System::currentTimeMillis;
+
+    long read();
+
+    /**
+     * @return общий для всех кэшей {@link CoarseTicker} с точностью 1 мс
+     */
+    static Ticker coarse() {
+        return CoarseTicker.DEFAULT;
+    }
+}
@@ -1,16 +1,140 @@
 package task3;
 
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Optional;
 
 public class Utils {
-    @SuppressWarnings("unchecked")
+    // Конструкторы обёрток, сгенерированных CacheProcessor, по классам объектов
+    private static final ClassValue<Optional<MethodHandle>> WRAPPERS = new ClassValue<>() {
+        @Override
+        protected Optional<MethodHandle> computeValue(Class<?> type) {
+            return findWrapper(type);
+        }
+    };
+
     public static <T> T cache(T object) {
+        return cache(object, CacheConfig.DEFAULT);
+    }
+
+    /**
+     * Создаёт кэширующую обёртку объекта: сгенерированную {@link CacheProcessor}, если она есть для класса объекта,
+     * иначе - динамический прокси его интерфейсов
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T cache(T object, CacheConfig config) {
         Class<T> objClass = (Class<T>) object.getClass();
+        MyCache cache = createCache(object, config);
+
+        Optional<MethodHandle> wrapper = WRAPPERS.get(objClass);
+        if (wrapper.isPresent()) {
+            try {
+                return (T) wrapper.get().invoke(cache);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot create generated wrapper for " + objClass.getName(), e);
+            }
+        }
 
         return (T) Proxy.newProxyInstance(
                 objClass.getClassLoader(),
                 objClass.getInterfaces(),
-                new MyCache(object)
+                cache
         );
     }
+
+    public static <A> A cacheAsync(Object object, Class<A> asyncInterface) {
+        return cacheAsync(object, asyncInterface, CacheConfig.DEFAULT);
+    }
+
+    /**
+     * Создаёт асинхронный фасад кэшируемого объекта.
+     * {@code asyncInterface} объявляет методы интерфейсов объекта с теми же именами и параметрами,
+     * возвращающие CompletableFuture с результатом метода.
+     * Результат из кэша возвращается завершённым future, при промахе метод вызывается в пуле
+     * {@link CacheConfig#getExecutor()}, мутаторы выполняются в вызывающем потоке
+     */
+    public static <A> A cacheAsync(Object object, Class<A> asyncInterface, CacheConfig config) {
+        MyCache cache = createCache(object, config);
+
+        return asyncInterface.cast(Proxy.newProxyInstance(
+                asyncInterface.getClassLoader(),
+                new Class<?>[]{asyncInterface},
+                new AsyncFacade(cache, object.getClass(), asyncInterface, config.getExecutor())
+        ));
+    }
+
+    /**
+     * Сохраняет снимок кэша объекта, созданного через {@link #cache} или {@link #cacheAsync}
+     *
+     * @return количество сохранённых результатов
+     * @see MyCache#saveSnapshot(Path)
+     */
+    public static int saveSnapshot(Object cached, Path file) throws IOException {
+        return requireCache(cached).saveSnapshot(file);
+    }
+
+    /**
+     * Загружает снимок в кэш объекта, созданного через {@link #cache} или {@link #cacheAsync}
+     *
+     * @return количество загруженных результатов
+     * @see MyCache#loadSnapshot(Path)
+     */
+    public static int loadSnapshot(Object cached, Path file) throws IOException {
+        return requireCache(cached).loadSnapshot(file);
+    }
+
+    /**
+     * @return кэш прокси или обёртки, созданных через {@link #cache} или {@link #cacheAsync},
+     * или {@code null} для других объектов
+     */
+    static MyCache cacheOf(Object object) {
+        if (object instanceof CacheWrapper wrapper)
+            return wrapper.getCache();
+        if (!Proxy.isProxyClass(object.getClass()))
+            return null;
+
+        InvocationHandler handler = Proxy.getInvocationHandler(object);
+        if (handler instanceof AsyncFacade facade)
+            return facade.getCache();
+        return handler instanceof MyCache cache ? cache : null;
+    }
+
+    private static MyCache requireCache(Object object) {
+        MyCache cache = cacheOf(object);
+        if (cache == null)
+            throw new IllegalArgumentException("Object is not created by Utils.cache: " + object.getClass());
+        return cache;
+    }
+
+    private static MyCache createCache(Object object, CacheConfig config) {
+        MyCache cache = new MyCache(object, config);
+        if (config.isJmxEnabled())
+            cache.registerMBean();
+        return cache;
+    }
+
+    /**
+     * Ищет обёртку класса, сгенерированную {@link CacheProcessor}: класс {@code <Класс>_Cached} в том же пакете
+     */
+    private static Optional<MethodHandle> findWrapper(Class<?> type) {
+        String packageName = type.getPackageName();
+        String name = packageName.isEmpty() ? type.getName() : type.getName().substring(packageName.length() + 1);
+        String wrapperName = (packageName.isEmpty() ? "" : packageName + ".") + name.replace('$', '_') + CacheProcessor.SUFFIX;
+        try {
+            Class<?> wrapper = Class.forName(wrapperName, true, type.getClassLoader());
+            if (!CacheWrapper.class.isAssignableFrom(wrapper))
+                return Optional.empty();
+            return Optional.of(MethodHandles.publicLookup()
+                    .findConstructor(wrapper, MethodType.methodType(void.class, MyCache.class)));
+        } catch (ClassNotFoundException e) {
+            return Optional.empty();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Generated wrapper " + wrapperName + " has no public constructor", e);
+        }
+    }
 }
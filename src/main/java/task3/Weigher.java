@@ -0,0 +1,13 @@
+package task3;
+
+/**
+ * Вычисляет вес записи в кэше, например, оценку занимаемой памяти.
+ * Используется для ограничения суммарного веса записей {@link CacheConfig#getMaximumWeight()}
+ */
+@FunctionalInterface
+public interface Weigher {
+    /**
+     * @return неотрицательный вес результата вызова метода с указанными аргументами
+     */
+    int weigh(ArgumentsKey key, Object result);
+}
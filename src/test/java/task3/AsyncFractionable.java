@@ -0,0 +1,10 @@
+package task3;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncFractionable {
+    CompletableFuture<Double> doubleValue();
+    CompletableFuture<Integer> intValue();
+    CompletableFuture<Void> setNum(int num);
+    CompletableFuture<Void> setDenum(int denum);
+}
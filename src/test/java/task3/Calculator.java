@@ -0,0 +1,6 @@
+package task3;
+
+public interface Calculator {
+    long sum(int a, int b);
+    void setOffset(int offset);
+}
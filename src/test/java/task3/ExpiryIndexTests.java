@@ -0,0 +1,136 @@
+package task3;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class ExpiryIndexTests {
+    private final Map<ArgumentsKey, CachedResult> owner = new ConcurrentHashMap<>();
+    private final AtomicInteger keys = new AtomicInteger();
+
+    @Test
+    public void should_ProcessOnlyDueBuckets_When_Expired() {
+        ExpiryIndex index = new ExpiryIndex(10);
+        CachedResult first = entry(15);
+        CachedResult second = entry(25);
+        CachedResult late = entry(105);
+        index.add(first);
+        index.add(second);
+        index.add(late);
+
+        // Корзина текущего момента (30-39) ещё не обрабатывается
+        Assertions.assertEquals(2, index.countExpired(30));
+
+        List<CachedResult> expired = new ArrayList<>();
+        index.expire(30, expired::add);
+        Assertions.assertEquals(List.of(first, second), expired);
+        Assertions.assertEquals(0, index.countExpired(30));
+        Assertions.assertEquals(1, index.countExpired(200));
+    }
+
+    @Test
+    public void should_MoveEntryToNewBucket_When_LifetimeExtended() {
+        ExpiryIndex index = new ExpiryIndex(10);
+        CachedResult lazy = entry(15);
+        CachedResult eager = entry(15);
+        index.add(lazy);
+        index.add(eager);
+
+        // Продление без переноса: запись переносится при обработке корзины
+        lazy.setExpired(55);
+        // Продление с переносом: запись сразу перестаёт учитываться в прежней корзине
+        eager.setExpired(75);
+        index.add(eager);
+        Assertions.assertEquals(1, index.countExpired(30));
+
+        List<CachedResult> expired = new ArrayList<>();
+        index.expire(30, expired::add);
+        Assertions.assertTrue(expired.isEmpty());
+        Assertions.assertEquals(0, index.countExpired(30));
+        Assertions.assertEquals(1, index.countExpired(60));
+        Assertions.assertEquals(2, index.countExpired(80));
+
+        // Удалённая запись не учитывается и не обрабатывается
+        remove(index, eager);
+        Assertions.assertEquals(1, index.countExpired(80));
+        index.expire(80, expired::add);
+        Assertions.assertEquals(List.of(lazy), expired);
+    }
+
+    @Test
+    public void should_KeepEntry_When_AddedToClosingBucket() throws Exception {
+        ExpiryIndex index = new ExpiryIndex(10);
+        int threads = 4;
+        int perThread = 5000;
+        Set<CachedResult> expired = ConcurrentHashMap.newKeySet();
+        Consumer<CachedResult> onExpired = cachedResult -> {
+            if (remove(index, cachedResult))
+                expired.add(cachedResult);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicBoolean adding = new AtomicBoolean(true);
+            List<Future<?>> adders = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                adders.add(executor.submit(() -> {
+                    start.await();
+                    // Записи попадают в несколько корзин, которые параллельно обрабатываются очисткой
+                    for (int j = 0; j < perThread; j++) {
+                        index.add(entry(j % 50));
+                    }
+                    return null;
+                }));
+            }
+            Future<?> cleaner = executor.submit(() -> {
+                start.await();
+                while (adding.get()) {
+                    index.expire(100, onExpired);
+                }
+                return null;
+            });
+
+            start.countDown();
+            for (Future<?> adder : adders) {
+                adder.get();
+            }
+            adding.set(false);
+            cleaner.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Ни одна запись не потеряна и не обработана дважды
+        index.expire(100, onExpired);
+        Assertions.assertEquals(threads * perThread, expired.size());
+        Assertions.assertTrue(owner.isEmpty());
+        Assertions.assertEquals(0, index.countExpired(Long.MAX_VALUE));
+    }
+
+    private CachedResult entry(long expired) {
+        ArgumentsKey key = ArgumentsKey.of(new Object[]{keys.incrementAndGet()});
+        CachedResult cachedResult = new CachedResult(key, key, expired, null, null, owner, 1);
+        owner.put(key, cachedResult);
+        return cachedResult;
+    }
+
+    private static boolean remove(ExpiryIndex index, CachedResult cachedResult) {
+        if (!cachedResult.remove())
+            return false;
+        index.remove(cachedResult);
+        return true;
+    }
+}
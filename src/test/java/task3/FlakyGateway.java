@@ -0,0 +1,32 @@
+package task3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервис, который выбрасывает исключение, пока он недоступен
+ */
+public class FlakyGateway implements Gateway {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+
+    private boolean available;
+
+    @Cache(lifetime = 1000, failureLifetime = 100)
+    @Override
+    public String fetch(String key) {
+        originalMethodCallCounter.getAndIncrement();
+        if (!available)
+            throw new IllegalStateException("Gateway is not available");
+        return key.toUpperCase();
+    }
+
+    @Mutator
+    @Override
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+}
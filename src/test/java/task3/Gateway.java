@@ -0,0 +1,7 @@
+package task3;
+
+public interface Gateway {
+    String fetch(String key);
+
+    void setAvailable(boolean available);
+}
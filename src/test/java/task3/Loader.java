@@ -0,0 +1,7 @@
+package task3;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface Loader {
+    CompletableFuture<String> load(String key);
+}
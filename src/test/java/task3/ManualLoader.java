@@ -0,0 +1,30 @@
+package task3;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронный загрузчик, результаты которого завершаются вручную через {@link #getPending()}
+ */
+public class ManualLoader implements Loader {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+    @StateIgnore
+    private volatile CompletableFuture<String> pending;
+
+    @Cache
+    @Override
+    public CompletableFuture<String> load(String key) {
+        originalMethodCallCounter.getAndIncrement();
+        pending = new CompletableFuture<>();
+        return pending;
+    }
+
+    public CompletableFuture<String> getPending() {
+        return pending;
+    }
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+}
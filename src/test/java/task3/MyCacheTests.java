@@ -2,11 +2,111 @@ package task3;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MyCacheTests {
+    @Test
+    public void should_RethrowOriginalException_When_MethodThrows() throws IOException {
+        Parser proxy = (Parser) Proxy.newProxyInstance(Parser.class.getClassLoader(), new Class<?>[]{Parser.class},
+                new MyCache(new StrictParser()));
+        Parser wrapper = Utils.cache(new StrictParser());
+        Assertions.assertInstanceOf(StrictParser_Cached.class, wrapper);
+
+        // Проверяемые и непроверяемые исключения передаются без обёртки и прокси, и сгенерированной обёрткой
+        for (Parser parser : List.of(proxy, wrapper)) {
+            Assertions.assertEquals(42, parser.parse("42"));
+            IOException checked = Assertions.assertThrows(IOException.class, () -> parser.parse(""));
+            Assertions.assertEquals("Empty input", checked.getMessage());
+            Assertions.assertThrows(NumberFormatException.class, () -> parser.parse("x"));
+        }
+    }
+
+    @Test
+    public void should_NotReturnTornResult_When_MutatorRunsConcurrently() throws Exception {
+        Span span = Utils.cache(new SlidingSpan(0, 10));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Void> mutator = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 100; i++)
+                    span.shift(1);
+            }, executor);
+            CompletableFuture<Set<Integer>> reader = CompletableFuture.supplyAsync(() -> {
+                Set<Integer> lengths = new HashSet<>();
+                while (!mutator.isDone())
+                    lengths.add(span.length());
+                return lengths;
+            }, executor);
+
+            // Метод не видит промежуточное состояние полей, и такой результат не возвращается
+            Assertions.assertEquals(Set.of(10), reader.get());
+            Assertions.assertEquals(10, span.length());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_SkipLastResult_When_StateChangedOrEntryReplaced() {
+        AtomicLong time = new AtomicLong();
+
+        // Смена состояния: последний результат метода относится к другому состоянию
+        Fraction fraction = new Fraction(2, 10);
+        MyCache cache = new MyCache(fraction, CacheConfig.builder().ticker(time::get).build());
+        Fractionable fractionable = (Fractionable) Proxy.newProxyInstance(
+                Fraction.class.getClassLoader(), Fraction.class.getInterfaces(), cache);
+        Assertions.assertEquals(0.2, fractionable.doubleValue()); // вызов метода (+1)
+        fractionable.setNum(5);
+        Assertions.assertEquals(0.5, fractionable.doubleValue()); // вызов метода (+1)
+        fractionable.setNum(2);
+        Assertions.assertEquals(0.2, fractionable.doubleValue()); // из кэша, поиск по состоянию
+        Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
+
+        // Удаление устаревшей записи
+        time.set(1000);
+        cache.clearCache();
+        Assertions.assertEquals(0.2, fractionable.doubleValue()); // вызов метода (+1)
+        Assertions.assertEquals(3, fraction.getOriginalMethodCallCounter());
+
+        // Вытеснение записи
+        Fraction bounded = new Fraction(2, 10);
+        Fractionable boundedFractionable = (Fractionable) Proxy.newProxyInstance(Fraction.class.getClassLoader(),
+                Fraction.class.getInterfaces(), new MyCache(bounded, CacheConfig.builder().maximumSize(1).build()));
+        boundedFractionable.doubleValue(); // вызов метода (+1)
+        boundedFractionable.intValue();    // вызов метода (+1), запись doubleValue вытесняется
+        boundedFractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(3, bounded.getOriginalMethodCallCounter());
+
+        // Замена записи обновлённым заранее результатом
+        VersionedSource source = new VersionedSource();
+        MyCache sourceCache = new MyCache(source, CacheConfig.builder().ticker(time::get).executor(Runnable::run).build());
+        Versioned versioned = (Versioned) Proxy.newProxyInstance(
+                VersionedSource.class.getClassLoader(), VersionedSource.class.getInterfaces(), sourceCache);
+        Assertions.assertEquals(1, versioned.version()); // вызов метода (+1), время жизни до 2000
+        time.set(1900);
+        Assertions.assertEquals(1, versioned.version()); // из кэша, обновление (+1) заменяет запись
+        Assertions.assertEquals(2, versioned.version()); // из кэша, новая запись
+        Assertions.assertEquals(2, versioned.version()); // из кэша
+        Assertions.assertEquals(2, source.getOriginalMethodCallCounter());
+    }
+
     @Test
     public void should_TakeResultFromCache_When_BackToPreviousState() {
         Fraction fraction = new Fraction(2, 10);
@@ -34,6 +134,62 @@ public class MyCacheTests {
 
     }
 
+    @Test
+    public void should_TakeResultFromCache_When_UnrelatedFieldChanges() {
+        Fraction fraction = new Fraction(2, 10);
+        Fractionable fractionable = Utils.cache(fraction);
+
+        fractionable.intValue();    // вызов метода (+1)
+        fractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
+
+        fractionable.setDenum(5);   // intValue зависит только от num
+        fractionable.intValue();    // из кэша
+        fractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(3, fraction.getOriginalMethodCallCounter());
+
+        fractionable.setNum(3);     // обновление состояния для обоих методов
+        fractionable.intValue();    // вызов метода (+1)
+        Assertions.assertEquals(4, fraction.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_EvictOldestResult_When_MaximumSizeExceeded() {
+        Fraction fraction = new Fraction(2, 10);
+        Fractionable fractionable = Utils.cache(fraction, CacheConfig.builder().maximumSize(2).build());
+
+        fractionable.doubleValue(); // вызов метода (+1)
+        fractionable.setNum(3);
+        fractionable.doubleValue(); // вызов метода (+1)
+        fractionable.setNum(4);
+        fractionable.doubleValue(); // вызов метода (+1), вытеснение результата для num = 2
+        Assertions.assertEquals(3, fraction.getOriginalMethodCallCounter());
+
+        fractionable.setNum(3);
+        fractionable.doubleValue(); // из кэша
+        Assertions.assertEquals(3, fraction.getOriginalMethodCallCounter());
+
+        fractionable.setNum(2);
+        fractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(4, fraction.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_DropEmptyStates_When_ResultsEvicted() {
+        Fractionable fractionable = Utils.cache(new Fraction(2, 10), CacheConfig.builder().maximumSize(10).build());
+        MyCache cache = Utils.cacheOf(fractionable);
+
+        for (int num = 0; num < 1000; num++) {
+            fractionable.setNum(num);
+            fractionable.doubleValue(); // вызов метода, вытеснение результата одного из прежних состояний
+        }
+
+        // Состояния вытесненных результатов не остаются в кэше
+        Assertions.assertEquals(10, cache.getSize());
+        Assertions.assertEquals(10, cache.getStateCount());
+        Assertions.assertEquals(10, cache.getCanonicalStateCount());
+    }
+
     @Test
     public void should_DeleteOldCacheRecords_When_ResultsExpire() throws InterruptedException {
         Fraction fraction1 = new Fraction(2, 10);
@@ -70,6 +226,97 @@ public class MyCacheTests {
         Assertions.assertEquals(2, fraction2.getOriginalMethodCallCounter());
     }
 
+    @Test
+    public void should_DeleteOldCacheRecords_When_CleanerScheduled() throws InterruptedException {
+        Fraction fraction = new Fraction(2, 10);
+        Fractionable fractionable = Utils.cache(fraction);
+
+        try (MyCacheCleaner cleaner = new MyCacheCleaner(200)) {
+            cleaner.add(fractionable);
+            // Очистка по расписанию без собственного потока
+            cleaner.start();
+
+            fractionable.doubleValue();    // вызов метода (+1)
+            fractionable.doubleValue();    // из кэша
+            Assertions.assertEquals(1, fraction.getOriginalMethodCallCounter());
+
+            // Для времени жизни 300мс и интервале очистки в 200мс
+            Thread.sleep(1000);
+
+            fractionable.doubleValue();    // вызов метода (+1)
+            Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
+        }
+    }
+
+    @Test
+    public void should_RegisterCacheOnce_When_CleanerAddCalledTwice() {
+        Fractionable fractionable = Utils.cache(new Fraction(2, 10));
+
+        try (MyCacheCleaner cleaner = new MyCacheCleaner(200)) {
+            cleaner.add(fractionable);
+            cleaner.add(fractionable);  // повторная регистрация игнорируется
+            Assertions.assertEquals(1, cleaner.size());
+
+            cleaner.start();
+            cleaner.add(fractionable);  // и после запуска очистки по расписанию
+            Assertions.assertEquals(1, cleaner.size());
+        }
+    }
+
+    @Test
+    public void should_ProlongCachedResultLife_When_TickerAdvances() {
+        AtomicLong time = new AtomicLong();
+        Fraction fraction = new Fraction(2, 10);
+        MyCache cache = new MyCache(fraction, CacheConfig.builder().ticker(time::get).build());
+        Fractionable fractionable = (Fractionable) Proxy.newProxyInstance(
+                Fraction.class.getClassLoader(), Fraction.class.getInterfaces(), cache);
+
+        fractionable.doubleValue(); // вызов метода (+1), время жизни до 300
+        time.set(200);
+        fractionable.doubleValue(); // из кэша, время жизни до 500
+
+        time.set(400);
+        cache.clearCache();
+        fractionable.doubleValue(); // из кэша, время жизни до 700
+        Assertions.assertEquals(1, fraction.getOriginalMethodCallCounter());
+
+        time.set(1000);
+        cache.clearCache();
+        fractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_CountHitsAndMisses_When_MethodsCalled() throws JMException {
+        Fraction fraction = new Fraction(2, 10);
+        MyCache cache = new MyCache(fraction);
+        Fractionable fractionable = (Fractionable) Proxy.newProxyInstance(
+                Fraction.class.getClassLoader(), Fraction.class.getInterfaces(), cache);
+
+        fractionable.doubleValue(); // промах
+        fractionable.doubleValue(); // попадание
+        fractionable.setDenum(5);   // смена состояния только для doubleValue
+        fractionable.doubleValue(); // промах
+
+        CacheStats stats = cache.getStats("doubleValue");
+        Assertions.assertEquals(1, stats.getHitCount());
+        Assertions.assertEquals(2, stats.getMissCount());
+        Assertions.assertEquals(2, stats.getLoadCount());
+        Assertions.assertEquals(1, stats.getStateSwitchCount());
+        Assertions.assertEquals(0, cache.getStats("intValue").getStateSwitchCount());
+
+        // Та же статистика доступна через JMX
+        cache.registerMBean();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Set<ObjectName> names = server.queryNames(new ObjectName("task3:type=MyCache,target=Fraction,*"), null);
+            Assertions.assertEquals(1, names.size());
+            Assertions.assertEquals(2L, server.getAttribute(names.iterator().next(), "Size"));
+        } finally {
+            cache.unregisterMBean();
+        }
+    }
+
     @Test
     public void should_ProlongCachedResultLfe_When_RequestBeforeExpireTime() {
         Fraction fraction = new Fraction(8, 20);
@@ -112,6 +359,495 @@ public class MyCacheTests {
         Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
     }
 
+    @Test
+    public void should_CallMethodOnce_When_ConcurrentCallsMissSameKey() {
+        SlowCalculator calculator = new SlowCalculator(300);
+        Calculator cachedCalculator = Utils.cache(calculator);
+
+        // Все потоки обращаются к методу с одинаковыми аргументами, пока выполняется первый вызов
+        try (ExecutorService executorService = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                executorService.execute(() -> cachedCalculator.sum(2, 3));
+            }
+        }
+        Assertions.assertEquals(1, calculator.getOriginalMethodCallCounter());
+
+        cachedCalculator.sum(3, 3); // вызов метода (+1)
+        Assertions.assertEquals(2, calculator.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_NotCacheResult_When_StateChangesDuringCall() throws InterruptedException {
+        SlowCalculator calculator = new SlowCalculator(300);
+        Calculator cachedCalculator = Utils.cache(calculator);
+
+        try (ExecutorService executorService = Executors.newFixedThreadPool(1)) {
+            executorService.execute(() -> cachedCalculator.sum(2, 3)); // вызов метода (+1)
+
+            // Мутатор не ожидает завершения вызова метода
+            Thread.sleep(100);
+            long start = System.currentTimeMillis();
+            cachedCalculator.setOffset(1);
+            cachedCalculator.setOffset(0);  // возврат к исходному состоянию
+            Assertions.assertTrue(System.currentTimeMillis() - start < 150);
+        }
+
+        // Результат вызова, во время которого менялось состояние, не попал в кэш
+        cachedCalculator.sum(2, 3);         // вызов метода (+1)
+        cachedCalculator.sum(2, 3);         // из кэша
+        Assertions.assertEquals(2, calculator.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_ShareFutureUntilCompletion_When_MethodReturnsFuture() {
+        AtomicLong time = new AtomicLong();
+        ManualLoader loader = new ManualLoader();
+        MyCache cache = new MyCache(loader, CacheConfig.builder().ticker(time::get).build());
+        Loader cachedLoader = (Loader) Proxy.newProxyInstance(
+                ManualLoader.class.getClassLoader(), ManualLoader.class.getInterfaces(), cache);
+
+        CompletableFuture<String> future = cachedLoader.load("a"); // вызов метода (+1)
+        Assertions.assertSame(future, cachedLoader.load("a"));     // из кэша, future ещё не завершён
+
+        // Незавершённый результат не устаревает
+        time.set(5000);
+        cache.clearCache();
+        Assertions.assertSame(future, cachedLoader.load("a"));
+        Assertions.assertEquals(1, loader.getOriginalMethodCallCounter());
+
+        // Время жизни 1000мс отсчитывается от завершения
+        loader.getPending().complete("A");
+        time.set(5900);
+        cache.clearCache();
+        Assertions.assertEquals("A", cachedLoader.load("a").join()); // из кэша, время жизни до 6900
+        time.set(7000);
+        cache.clearCache();
+        cachedLoader.load("a");                                      // вызов метода (+1)
+        Assertions.assertEquals(2, loader.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_RemoveFuture_When_CompletedExceptionally() {
+        ManualLoader loader = new ManualLoader();
+        Loader cachedLoader = Utils.cache(loader);
+
+        CompletableFuture<String> future = cachedLoader.load("a"); // вызов метода (+1)
+        loader.getPending().completeExceptionally(new IllegalStateException());
+        Assertions.assertTrue(future.isCompletedExceptionally());
+
+        CompletableFuture<String> retry = cachedLoader.load("a");  // вызов метода (+1)
+        Assertions.assertNotSame(future, retry);
+        Assertions.assertEquals(2, loader.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_CallMethodInExecutor_When_AsyncFacadeMisses() {
+        Fraction fraction = new Fraction(2, 10);
+        try (ExecutorService executorService = Executors.newSingleThreadExecutor()) {
+            AsyncFractionable fractionable = Utils.cacheAsync(fraction, AsyncFractionable.class,
+                    CacheConfig.builder().executor(executorService).build());
+
+            Assertions.assertEquals(0.2, fractionable.doubleValue().join()); // вызов метода (+1)
+            CompletableFuture<Double> hit = fractionable.doubleValue();       // из кэша
+            Assertions.assertTrue(hit.isDone());
+            Assertions.assertEquals(0.2, hit.join());
+            Assertions.assertEquals(1, fraction.getOriginalMethodCallCounter());
+
+            fractionable.setNum(5).join();                                    // обновление состояния
+            Assertions.assertEquals(0.5, fractionable.doubleValue().join()); // вызов метода (+1)
+            Assertions.assertEquals(2, fraction.getOriginalMethodCallCounter());
+        }
+    }
+
+    @Test
+    public void should_RefreshResultInBackground_When_HitNearExpiry() {
+        AtomicLong time = new AtomicLong();
+        VersionedCalculator calculator = new VersionedCalculator();
+        // Обновление выполняется в вызывающем потоке, чтобы результат был детерминирован
+        MyCache cache = new MyCache(calculator, CacheConfig.builder().ticker(time::get).executor(Runnable::run).build());
+        Calculator cachedCalculator = (Calculator) Proxy.newProxyInstance(
+                VersionedCalculator.class.getClassLoader(), VersionedCalculator.class.getInterfaces(), cache);
+
+        Assertions.assertEquals(1, cachedCalculator.sum(1, 2)); // вызов метода (+1), время жизни до 1000
+        time.set(500);
+        Assertions.assertEquals(1, cachedCalculator.sum(1, 2)); // из кэша, время жизни не продлевается
+
+        time.set(900);
+        Assertions.assertEquals(1, cachedCalculator.sum(1, 2)); // из кэша, обновление (+1), время жизни до 1900
+        Assertions.assertEquals(2, calculator.getOriginalMethodCallCounter());
+
+        time.set(1500);
+        cache.clearCache();
+        Assertions.assertEquals(2, cachedCalculator.sum(1, 2)); // из кэша
+        Assertions.assertEquals(2, calculator.getOriginalMethodCallCounter());
+        Assertions.assertEquals(1, cache.getStats("sum").getRefreshCount());
+        Assertions.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void should_KeepLargeResultOffHeap_When_OffHeapEnabled() {
+        AtomicLong time = new AtomicLong();
+        RangeGenerator generator = new RangeGenerator();
+        MyCache cache = new MyCache(generator, CacheConfig.builder()
+                .ticker(time::get)
+                .offHeapCapacity(1 << 20)
+                .offHeapThreshold(256)
+                .offHeapPromotion(3)
+                .build());
+        Ranges ranges = (Ranges) Proxy.newProxyInstance(
+                RangeGenerator.class.getClassLoader(), RangeGenerator.class.getInterfaces(), cache);
+
+        List<Integer> range = ranges.range(1000);      // вызов метода (+1), результат сохраняется вне кучи
+        Assertions.assertTrue(cache.getOffHeapSize() > 0);
+
+        List<Integer> first = ranges.range(1000);      // из кэша, копия результата
+        List<Integer> second = ranges.range(1000);     // из кэша, копия результата
+        Assertions.assertEquals(range, first);
+        Assertions.assertNotSame(first, second);
+
+        List<Integer> promoted = ranges.range(1000);   // из кэша, результат переносится в кучу
+        Assertions.assertSame(promoted, ranges.range(1000));
+        Assertions.assertEquals(range, promoted);
+        Assertions.assertEquals(0, cache.getOffHeapSize());
+        Assertions.assertEquals(1, generator.getOriginalMethodCallCounter());
+
+        ranges.range(2000);                            // вызов метода (+1), результат сохраняется вне кучи
+        Assertions.assertTrue(cache.getOffHeapSize() > 0);
+
+        // Ячейки устаревших результатов освобождаются при очистке
+        time.set(5000);
+        cache.clearCache();
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertEquals(0, cache.getOffHeapSize());
+        Assertions.assertEquals(2, generator.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_TakeResultFromSnapshot_When_CacheRestarted(@TempDir Path directory) throws IOException {
+        Path snapshot = directory.resolve("fraction.snapshot");
+
+        Fraction fraction = new Fraction(2, 10);
+        Fractionable fractionable = Utils.cache(fraction);
+        fractionable.doubleValue(); // вызов метода (+1)
+        fractionable.setNum(3);
+        fractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(2, Utils.saveSnapshot(fractionable, snapshot));
+
+        // Новый объект в том же состоянии после перезапуска
+        Fraction restarted = new Fraction(2, 10);
+        Fractionable restartedFractionable = Utils.cache(restarted);
+        Assertions.assertEquals(2, Utils.loadSnapshot(restartedFractionable, snapshot));
+
+        Assertions.assertEquals(0.2, restartedFractionable.doubleValue()); // из кэша
+        restartedFractionable.setNum(3);
+        Assertions.assertEquals(0.3, restartedFractionable.doubleValue()); // из кэша
+        Assertions.assertEquals(0, restarted.getOriginalMethodCallCounter());
+
+        restartedFractionable.setDenum(5);
+        restartedFractionable.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(1, restarted.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_CopyStoredBytes_When_SnapshotSavesOffHeapOrMappedResult(@TempDir Path directory)
+            throws IOException {
+        Path snapshot = directory.resolve("ranges.snapshot");
+        CacheConfig config = CacheConfig.builder().offHeapCapacity(1 << 20).offHeapThreshold(256)
+                .offHeapPromotion(1).build();
+
+        RangeGenerator generator = new RangeGenerator();
+        Ranges ranges = Utils.cache(generator, config);
+        List<Integer> range = ranges.range(1000); // вызов метода (+1), результат сохраняется вне кучи
+        MyCache cache = Utils.cacheOf(ranges);
+        long offHeapSize = cache.getOffHeapSize();
+        Assertions.assertTrue(offHeapSize > 0);
+
+        // Сохранение снимка не считается обращением: результат остаётся вне кучи
+        Assertions.assertEquals(1, Utils.saveSnapshot(ranges, snapshot));
+        Assertions.assertEquals(offHeapSize, cache.getOffHeapSize());
+        Assertions.assertEquals(0, cache.getStats("range").getHitCount());
+
+        // Результат, загруженный из снимка и ещё не прочитанный, сохраняется в новый снимок
+        Ranges restarted = Utils.cache(new RangeGenerator(), config);
+        Assertions.assertEquals(1, Utils.loadSnapshot(restarted, snapshot));
+        Path copy = directory.resolve("ranges-copy.snapshot");
+        Assertions.assertEquals(1, Utils.saveSnapshot(restarted, copy));
+
+        RangeGenerator last = new RangeGenerator();
+        Ranges lastRanges = Utils.cache(last, config);
+        Assertions.assertEquals(1, Utils.loadSnapshot(lastRanges, copy));
+        Assertions.assertEquals(range, lastRanges.range(1000)); // из кэша
+        Assertions.assertEquals(0, last.getOriginalMethodCallCounter());
+        Assertions.assertEquals(1, generator.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_TakeResultFromSharedScope_When_OtherObjectInSameState() {
+        CacheConfig config = CacheConfig.builder().scope(new CacheScope()).build();
+
+        Fraction fraction1 = new Fraction(2, 10);
+        Fractionable fractionable1 = Utils.cache(fraction1, config);
+        Fraction fraction2 = new Fraction(3, 10);
+        Fractionable fractionable2 = Utils.cache(fraction2, config);
+
+        Assertions.assertEquals(0.2, fractionable1.doubleValue()); // вызов метода у первого объекта (+1)
+        Assertions.assertEquals(0.3, fractionable2.doubleValue()); // вызов метода у второго объекта (+1)
+
+        fractionable2.setNum(2);
+        Assertions.assertEquals(0.2, fractionable2.doubleValue()); // из кэша, результат первого объекта
+        fractionable1.setNum(3);
+        Assertions.assertEquals(0.3, fractionable1.doubleValue()); // из кэша, результат второго объекта
+
+        Assertions.assertEquals(1, fraction1.getOriginalMethodCallCounter());
+        Assertions.assertEquals(1, fraction2.getOriginalMethodCallCounter());
+        Assertions.assertEquals(2, Utils.cacheOf(fractionable1).getSize());
+
+        // Прокси без области используют собственное хранилище
+        Fraction fraction3 = new Fraction(2, 10);
+        Fractionable fractionable3 = Utils.cache(fraction3);
+        fractionable3.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(1, fraction3.getOriginalMethodCallCounter());
+
+        // Ограничения размера относятся к общему хранилищу и не могут отличаться у прокси одной области
+        CacheConfig bounded = CacheConfig.builder().scope(config.getScope()).maximumSize(1).build();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Utils.cache(new Fraction(1, 10), bounded));
+    }
+
+    @Test
+    public void should_NotShareResultOfOtherState_When_OwnerMutatedDuringSharedLoad() throws Exception {
+        CacheConfig config = CacheConfig.builder().scope(new CacheScope()).build();
+        SlowCalculator calculator1 = new SlowCalculator(300);
+        Calculator cachedCalculator1 = Utils.cache(calculator1, config);
+        SlowCalculator calculator2 = new SlowCalculator(300);
+        Calculator cachedCalculator2 = Utils.cache(calculator2, config);
+
+        try (ExecutorService executorService = Executors.newFixedThreadPool(2)) {
+            // Первый прокси вызывает метод, второй в том же состоянии ожидает его результат
+            Future<Long> first = executorService.submit(() -> cachedCalculator1.sum(2, 3));
+            Thread.sleep(100);
+            Future<Long> second = executorService.submit(() -> cachedCalculator2.sum(2, 3));
+            Thread.sleep(50);
+            // Мутатор первого прокси во время вызова: его результат относится уже к другому состоянию
+            cachedCalculator1.setOffset(1);
+
+            Assertions.assertEquals(6, first.get());
+            Assertions.assertEquals(5, second.get());
+        }
+        Assertions.assertEquals(2, calculator1.getOriginalMethodCallCounter());
+        Assertions.assertEquals(1, calculator2.getOriginalMethodCallCounter());
+        Assertions.assertEquals(5, cachedCalculator2.sum(2, 3)); // из кэша
+    }
+
+    @Test
+    public void should_DropScopeStorage_When_ProxiesCollected() throws InterruptedException {
+        CacheScope scope = new CacheScope();
+        Fractionable fractionable = Utils.cache(new Fraction(2, 10), CacheConfig.builder().scope(scope).build());
+        fractionable.doubleValue();
+        Assertions.assertEquals(1, scope.size());
+
+        // Хранилище удаляется из области после сборки последнего прокси
+        fractionable = null;
+        for (int i = 0; i < 100 && scope.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(0, scope.size());
+    }
+
+    @Test
+    public void should_TakeResultFromRemoteTier_When_PeerComputedIt() {
+        InMemoryRemoteTier remoteTier = new InMemoryRemoteTier();
+        CacheConfig node1 = CacheConfig.builder().remoteTier(remoteTier.connect()).build();
+        CacheConfig node2 = CacheConfig.builder().remoteTier(remoteTier.connect()).build();
+
+        Fraction fraction1 = new Fraction(2, 10);
+        Fractionable fractionable1 = Utils.cache(fraction1, node1);
+        Fraction fraction2 = new Fraction(2, 10);
+        Fractionable fractionable2 = Utils.cache(fraction2, node2);
+
+        fractionable1.doubleValue(); // вызов метода (+1), результат рассылается второму узлу
+        Assertions.assertEquals(1, Utils.cacheOf(fractionable2).getSize());
+        Assertions.assertEquals(0.2, fractionable2.doubleValue()); // из кэша первого уровня
+
+        fractionable1.setNum(3);
+        fractionable1.doubleValue(); // вызов метода (+1), второй узел в другом состоянии
+        Assertions.assertEquals(1, Utils.cacheOf(fractionable2).getSize());
+        fractionable2.setNum(3);
+        Assertions.assertEquals(0.3, fractionable2.doubleValue()); // из удалённого уровня
+        Assertions.assertEquals(2, Utils.cacheOf(fractionable2).getSize());
+
+        Assertions.assertEquals(2, fraction1.getOriginalMethodCallCounter());
+        Assertions.assertEquals(0, fraction2.getOriginalMethodCallCounter());
+        Assertions.assertEquals(2, remoteTier.size());
+
+        // После отписки результаты других узлов не принимаются
+        Utils.cacheOf(fractionable2).unsubscribeRemoteTier();
+        fractionable1.setNum(4);
+        fractionable1.doubleValue(); // вызов метода (+1)
+        Assertions.assertEquals(2, Utils.cacheOf(fractionable2).getSize());
+
+        // Результат, класс которого отклонён фильтром, не десериализуется, и метод вызывается
+        CacheConfig node3 = CacheConfig.builder().remoteTier(remoteTier.connect())
+                .deserializationFilter(info -> ObjectInputFilter.Status.REJECTED).build();
+        Fraction fraction3 = new Fraction(4, 10);
+        Fractionable fractionable3 = Utils.cache(fraction3, node3);
+        Assertions.assertEquals(0.4, fractionable3.doubleValue()); // вызов метода (+1)
+        Assertions.assertEquals(1, fraction3.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_PackPrimitiveFields_When_StateCaptured() {
+        StateSchema schema = StateSchema.forClass(Reading.class);
+        State state = schema.capture(new Reading(0.5, true, "C"));
+
+        Assertions.assertEquals(state, schema.capture(new Reading(0.5, true, "C")));
+        Assertions.assertEquals(state.hashCode(), schema.capture(new Reading(0.5, true, "C")).hashCode());
+        Assertions.assertNotEquals(state, schema.capture(new Reading(0.5, false, "C")));
+        // Значения double сравниваются так же, как в обёртках: 0.0 и -0.0 различаются
+        Assertions.assertNotEquals(schema.capture(new Reading(0.0, true, "C")), schema.capture(new Reading(-0.0, true, "C")));
+
+        Assertions.assertArrayEquals(new Object[]{0.5, true, "C"}, state.values());
+        Assertions.assertEquals(state, new State(schema, schema.indexesOf(), new Object[]{0.5, true, "C"}));
+
+        State projection = state.project(schema.indexesOf("value", "unit"));
+        Assertions.assertArrayEquals(new Object[]{0.5, "C"}, projection.values());
+        Assertions.assertEquals(projection, schema.capture(new Reading(0.5, false, "C")).project(schema.indexesOf("value", "unit")));
+    }
+
+    @Test
+    public void should_RethrowCachedException_When_FailureLifetimeSet() {
+        AtomicLong time = new AtomicLong();
+        FlakyGateway gateway = new FlakyGateway();
+        Gateway cachedGateway = Utils.cache(gateway, CacheConfig.builder().ticker(time::get).build());
+
+        // вызов метода (+1), исключение сохраняется в кэше до 100
+        IllegalStateException failure = Assertions.assertThrows(IllegalStateException.class, () -> cachedGateway.fetch("a"));
+        time.set(50);
+        // из кэша: то же исключение без обёртки, время жизни не продлевается
+        Assertions.assertSame(failure, Assertions.assertThrows(IllegalStateException.class, () -> cachedGateway.fetch("a")));
+        Assertions.assertEquals(1, gateway.getOriginalMethodCallCounter());
+
+        time.set(200);
+        Utils.cacheOf(cachedGateway).clearCache();
+        Assertions.assertThrows(IllegalStateException.class, () -> cachedGateway.fetch("a")); // вызов метода (+1)
+        Assertions.assertEquals(2, gateway.getOriginalMethodCallCounter());
+
+        // Исключение относится к состоянию, в котором оно было выброшено
+        cachedGateway.setAvailable(true);
+        Assertions.assertEquals("A", cachedGateway.fetch("a")); // вызов метода (+1)
+        Assertions.assertEquals("A", cachedGateway.fetch("a")); // из кэша
+        Assertions.assertEquals(3, gateway.getOriginalMethodCallCounter());
+    }
+
+    @Test
+    public void should_BypassCache_When_CachingDoesNotPayOff() {
+        AtomicLong time = new AtomicLong();
+        SlowCalculator calculator = new SlowCalculator(0);
+        Calculator cachedCalculator = Utils.cache(calculator,
+                CacheConfig.builder().ticker(time::get).adaptive(true).adaptiveInterval(100).build());
+        MyCache cache = Utils.cacheOf(cachedCalculator);
+
+        // Каждый вызов с новыми аргументами: попаданий нет
+        for (int i = 0; i < 1000; i++) {
+            cachedCalculator.sum(i, i);
+        }
+        time.set(100);
+        for (int i = 1000; i < 3000; i++) {
+            cachedCalculator.sum(i, i);
+        }
+        CacheStats stats = cache.getStats("sum");
+        Assertions.assertEquals(1, stats.getBypassSwitchCount());
+        Assertions.assertTrue(stats.getBypassCount() > 0);
+        Assertions.assertEquals(3000, stats.getHitCount() + stats.getMissCount() + stats.getBypassCount());
+
+        // После окончания периода метод снова кэшируется
+        time.set(200);
+        for (int i = 0; i < 1000; i++) {
+            cachedCalculator.sum(1, 1);
+        }
+        Assertions.assertTrue(cache.getStats("sum").getHitCount() > 0);
+        Assertions.assertEquals(1, cache.getStats("sum").getBypassSwitchCount());
+    }
+
+    @Test
+    public void should_NotReturnTornResult_When_BypassedCallRacesMutator() throws Exception {
+        AtomicLong time = new AtomicLong();
+        Span span = Utils.cache(new SlidingSpan(0, 10),
+                CacheConfig.builder().ticker(time::get).adaptive(true).adaptiveInterval(100).build());
+        MyCache cache = Utils.cacheOf(span);
+
+        // Каждый вызов в новом состоянии: попаданий нет, и после окончания периода метод вызывается в обход кэша
+        for (int i = 0; i < 640; i++) {
+            span.shift(1);
+            span.length();
+        }
+        time.set(100);
+        for (int i = 0; i < 5000 && cache.getStats("length").getBypassCount() == 0; i++) {
+            span.shift(1);
+            span.length();
+        }
+        long bypasses = cache.getStats("length").getBypassCount();
+        Assertions.assertTrue(bypasses > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Void> mutator = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 100; i++)
+                    span.shift(1);
+            }, executor);
+            CompletableFuture<Set<Integer>> reader = CompletableFuture.supplyAsync(() -> {
+                Set<Integer> lengths = new HashSet<>();
+                while (!mutator.isDone())
+                    lengths.add(span.length());
+                return lengths;
+            }, executor);
+
+            // Вызов в обход кэша также не видит промежуточное состояние полей
+            Assertions.assertEquals(Set.of(10), reader.get());
+            Assertions.assertTrue(cache.getStats("length").getBypassCount() > bypasses);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_UseGeneratedWrapper_When_ProcessorGeneratedIt() {
+        SlowCalculator calculator = new SlowCalculator(0);
+        Calculator cachedCalculator = Utils.cache(calculator);
+        Assertions.assertInstanceOf(SlowCalculator_Cached.class, cachedCalculator);
+
+        cachedCalculator.sum(1, 2); // вызов метода (+1)
+        cachedCalculator.sum(1, 2); // из кэша
+        cachedCalculator.setOffset(10);
+        Assertions.assertEquals(13, cachedCalculator.sum(1, 2)); // вызов метода (+1)
+        Assertions.assertEquals(2, calculator.getOriginalMethodCallCounter());
+        Assertions.assertEquals(1, Utils.cacheOf(cachedCalculator).getStats("sum").getHitCount());
+
+        // Исключение метода передаётся без обёртки
+        Gateway cachedGateway = Utils.cache(new FlakyGateway());
+        Assertions.assertInstanceOf(CacheWrapper.class, cachedGateway);
+        Assertions.assertThrows(IllegalStateException.class, () -> cachedGateway.fetch("a"));
+
+        // Обёртки генерируются и для основного кода
+        Fractionable fractionable = Utils.cache(new Fraction(2, 10));
+        Assertions.assertInstanceOf(Fraction_Cached.class, fractionable);
+
+        // Для объектов без сгенерированной обёртки создаётся динамический прокси
+        Calculator anonymousCalculator = Utils.cache(new Calculator() {
+            @Cache
+            @Override
+            public long sum(int a, int b) {
+                return a + b;
+            }
+
+            @Mutator
+            @Override
+            public void setOffset(int offset) {
+            }
+        });
+        Assertions.assertTrue(Proxy.isProxyClass(anonymousCalculator.getClass()));
+    }
+
     private void startCacheCleanThread(MyCacheCleaner cleaner) {
         Thread cleanerThread = new Thread(() -> {
             try {
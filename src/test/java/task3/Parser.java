@@ -0,0 +1,7 @@
+package task3;
+
+import java.io.IOException;
+
+public interface Parser {
+    int parse(String text) throws IOException;
+}
@@ -0,0 +1,28 @@
+package task3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс с кэшируемым методом, возвращающим результат большого размера
+ */
+public class RangeGenerator implements Ranges {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+
+    @Cache
+    @Override
+    public List<Integer> range(int size) {
+        originalMethodCallCounter.getAndIncrement();
+        List<Integer> range = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+}
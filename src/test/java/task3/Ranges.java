@@ -0,0 +1,7 @@
+package task3;
+
+import java.util.List;
+
+public interface Ranges {
+    List<Integer> range(int size);
+}
@@ -0,0 +1,13 @@
+package task3;
+
+public class Reading {
+    private final double value;
+    private final boolean calibrated;
+    private final String unit;
+
+    public Reading(double value, boolean calibrated, String unit) {
+        this.value = value;
+        this.calibrated = calibrated;
+        this.unit = unit;
+    }
+}
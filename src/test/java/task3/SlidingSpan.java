@@ -0,0 +1,38 @@
+package task3;
+
+/**
+ * Отрезок, границы которого мутатор сдвигает по очереди: между изменениями полей длина отрезка неверна
+ */
+public class SlidingSpan implements Span {
+    private int from;
+    private int to;
+
+    public SlidingSpan(int from, int to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    @Cache
+    @Override
+    public int length() {
+        int start = from;
+        pause();
+        return to - start;
+    }
+
+    @Mutator
+    @Override
+    public void shift(int offset) {
+        from += offset;
+        pause();
+        to += offset;
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
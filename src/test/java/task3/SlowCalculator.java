@@ -0,0 +1,44 @@
+package task3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс с медленным кэшируемым методом для проверки многопоточных сценариев
+ */
+public class SlowCalculator implements Calculator {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+    @StateIgnore
+    private final long delay;
+    private int offset;
+
+    public SlowCalculator(long delay) {
+        this.delay = delay;
+    }
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+
+    @Cache
+    @Override
+    public long sum(int a, int b) {
+        originalMethodCallCounter.getAndIncrement();
+        sleep();
+        return (long) a + b + offset;
+    }
+
+    @Mutator
+    @Override
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package task3;
+
+public interface Span {
+    int length();
+
+    void shift(int offset);
+}
@@ -0,0 +1,16 @@
+package task3;
+
+import java.io.IOException;
+
+/**
+ * Разбор числа: для пустой строки выбрасывает проверяемое исключение, для нечисловой - непроверяемое
+ */
+public class StrictParser implements Parser {
+    @Cache
+    @Override
+    public int parse(String text) throws IOException {
+        if (text.isEmpty())
+            throw new IOException("Empty input");
+        return Integer.parseInt(text);
+    }
+}
@@ -0,0 +1,5 @@
+package task3;
+
+public interface Versioned {
+    long version();
+}
@@ -0,0 +1,28 @@
+package task3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс, кэшируемый метод которого возвращает номер своего вызова, для проверки обновления результатов
+ */
+public class VersionedCalculator implements Calculator {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+    private int offset;
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+
+    @Cache(lifetime = 1000, refreshAhead = 200)
+    @Override
+    public long sum(int a, int b) {
+        return originalMethodCallCounter.incrementAndGet();
+    }
+
+    @Mutator
+    @Override
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+}
@@ -0,0 +1,21 @@
+package task3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Класс, кэшируемый метод без аргументов которого возвращает номер своего вызова
+ */
+public class VersionedSource implements Versioned {
+    @StateIgnore
+    private final AtomicInteger originalMethodCallCounter = new AtomicInteger(0);
+
+    public int getOriginalMethodCallCounter() {
+        return originalMethodCallCounter.get();
+    }
+
+    @Cache(lifetime = 1000, refreshAhead = 200)
+    @Override
+    public long version() {
+        return originalMethodCallCounter.incrementAndGet();
+    }
+}